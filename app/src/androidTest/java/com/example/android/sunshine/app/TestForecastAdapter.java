@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.MainThreadRunner;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Binds forecast rows over and over, the way a fling does, and logs how many binds a second
+    the adapter manages and how many objects each bind allocates.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+    private static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    private static final int DAY_COUNT = 14;
+    private static final int WARM_UP_BINDS = 200;
+    private static final int BENCHMARK_BINDS = 5000;
+    private static final long MAIN_THREAD_TIMEOUT_SECONDS = 30;
+
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private MatrixCursor createForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < DAY_COUNT; i++) {
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    today + i * DAY_IN_MILLIS,
+                    "Clear",
+                    20.0 + i,
+                    10.0 + i,
+                    "99705",
+                    800,
+                    64.7488,
+                    -147.353,
+                    1.2,
+                    1020.0,
+                    5.5,
+                    1.1
+            });
+        }
+        return cursor;
+    }
+
+    public void testBindThroughput() throws Throwable {
+        MainThreadRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                ContextThemeWrapper context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                ForecastAdapter adapter = new ForecastAdapter(context,
+                        new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                            @Override
+                            public void onClick(Long date,
+                                                ForecastAdapter.ForecastAdapterViewHolder vh) {
+                            }
+                        }, new View(context), AbsListView.CHOICE_MODE_NONE);
+                adapter.setUseTodayLayout(true);
+                adapter.swapCursor(createForecastCursor());
+                assertEquals(DAY_COUNT, adapter.getItemCount());
+
+                // One holder per view type, rebound like a recycled row.
+                ForecastAdapter.ForecastAdapterViewHolder today =
+                        adapter.createViewHolder(recyclerView, adapter.getItemViewType(0));
+                ForecastAdapter.ForecastAdapterViewHolder future =
+                        adapter.createViewHolder(recyclerView, adapter.getItemViewType(1));
+
+                for (int i = 0; i < WARM_UP_BINDS; i++) {
+                    bind(adapter, today, future, i);
+                }
+
+                startAllocCounting();
+                long start = System.nanoTime();
+                for (int i = 0; i < BENCHMARK_BINDS; i++) {
+                    bind(adapter, today, future, i);
+                }
+                long elapsedNanos = System.nanoTime() - start;
+                int allocations = stopAllocCounting();
+
+                long bindsPerSecond = BENCHMARK_BINDS * TimeUnit.SECONDS.toNanos(1)
+                        / Math.max(elapsedNanos, 1);
+                Log.i(LOG_TAG, BENCHMARK_BINDS + " binds in "
+                        + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms, "
+                        + bindsPerSecond + " binds/s, "
+                        + (float) allocations / BENCHMARK_BINDS + " allocations per bind");
+
+                assertEquals("Error: Wrong date bound to the first row",
+                        adapter.getDays()[0].longDateText, today.mDateView.getText().toString());
+            }
+        }, MAIN_THREAD_TIMEOUT_SECONDS);
+    }
+
+    // Deprecated since API 23 in favour of Debug.getRuntimeStat(), which has no per-thread
+    // allocation count.  These still count on ART, and are only used here.
+    @SuppressWarnings("deprecation")
+    private static void startAllocCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+    }
+
+    /**
+     * @return objects allocated on this thread since {@link #startAllocCounting()}
+     */
+    @SuppressWarnings("deprecation")
+    private static int stopAllocCounting() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    private static void bind(ForecastAdapter adapter,
+                             ForecastAdapter.ForecastAdapterViewHolder today,
+                             ForecastAdapter.ForecastAdapterViewHolder future, int i) {
+        int position = i % DAY_COUNT;
+        adapter.bindViewHolder(position == 0 ? today : future, position);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+
+/*
+    Checks that ItemChoiceManager keeps selections on the right items across data set changes
+    on a long list, and logs how long restoring them takes.
+ */
+public class TestItemChoiceManager extends AndroidTestCase {
+    private static final String LOG_TAG = TestItemChoiceManager.class.getSimpleName();
+
+    private static final int ROW_COUNT = 10000;
+    private static final int CHECKED_EVERY = 10;
+    private static final int BENCHMARK_SWAPS = 50;
+
+    /**
+     * An adapter that only has ids.
+     */
+    static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        long[] mIds;
+
+        IdAdapter(long[] ids) {
+            mIds = ids;
+            setHasStableIds(true);
+        }
+
+        void swapIds(long[] ids) {
+            mIds = ids;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds[position];
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // ids firstId, firstId + 1, ... for count rows
+    private static long[] createIds(long firstId, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = firstId + i;
+        }
+        return ids;
+    }
+
+    private ItemChoiceManager createCheckedManager(IdAdapter adapter) {
+        ItemChoiceManager manager = new ItemChoiceManager(adapter);
+        manager.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        for (int position = 0; position < ROW_COUNT; position += CHECKED_EVERY) {
+            manager.setItemChecked(position, true);
+        }
+        return manager;
+    }
+
+    public void testSelectionsFollowItemsFarAway() {
+        IdAdapter adapter = new IdAdapter(createIds(0, ROW_COUNT));
+        ItemChoiceManager manager = createCheckedManager(adapter);
+
+        // Put half a list of new rows in front, moving every item by thousands of positions.
+        int shift = ROW_COUNT / 2;
+        long[] shifted = new long[ROW_COUNT + shift];
+        System.arraycopy(createIds(-shift, shift), 0, shifted, 0, shift);
+        System.arraycopy(createIds(0, ROW_COUNT), 0, shifted, shift, ROW_COUNT);
+        adapter.swapIds(shifted);
+
+        for (int position = 0; position < shifted.length; position++) {
+            boolean expected = position >= shift && (position - shift) % CHECKED_EVERY == 0;
+            assertEquals("Error: Wrong checked state at position " + position,
+                    expected, manager.isItemChecked(position));
+        }
+        assertEquals(shift, manager.getSelectedItemPosition());
+    }
+
+    public void testRemovedItemsAreUnchecked() {
+        IdAdapter adapter = new IdAdapter(createIds(0, ROW_COUNT));
+        ItemChoiceManager manager = createCheckedManager(adapter);
+
+        // Drop the first half of the list.
+        int removed = ROW_COUNT / 2;
+        adapter.swapIds(createIds(removed, ROW_COUNT - removed));
+
+        for (int position = 0; position < ROW_COUNT - removed; position++) {
+            assertEquals("Error: Wrong checked state at position " + position,
+                    position % CHECKED_EVERY == 0, manager.isItemChecked(position));
+        }
+        assertEquals("Error: Removed items should not stay checked",
+                (ROW_COUNT - removed) / CHECKED_EVERY, manager.mCheckedIdStates.size());
+    }
+
+    public void testRestoreTenThousandRows() {
+        long[] ids = createIds(0, ROW_COUNT);
+        long[] shiftedIds = createIds(-1, ROW_COUNT + 1);
+        IdAdapter adapter = new IdAdapter(ids);
+        ItemChoiceManager manager = createCheckedManager(adapter);
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_SWAPS; i++) {
+            // Alternate between the lists so every checked item moves on every swap.
+            adapter.swapIds(i % 2 == 0 ? shiftedIds : ids);
+            manager.getSelectedItemPosition();
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        Log.i(LOG_TAG, "Restored " + ROW_COUNT / CHECKED_EVERY + " selections in "
+                + ROW_COUNT + " rows " + BENCHMARK_SWAPS + " times in " + elapsed + "ms");
+
+        assertEquals(ROW_COUNT / CHECKED_EVERY, manager.mCheckedIdStates.size());
+        assertTrue(manager.isItemChecked(0));
+        assertFalse(manager.isItemChecked(1));
+    }
+}
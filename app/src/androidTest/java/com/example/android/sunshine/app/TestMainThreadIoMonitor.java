@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.MainThreadRunner;
+
+import java.util.List;
+
+/*
+    Checks that preference and provider access on the main thread is recorded, with a stack the
+    first time only, and that what the main screen reads on start fits the main thread budget.
+ */
+public class TestMainThreadIoMonitor extends AndroidTestCase {
+
+    // What the app reads on the main thread on start: settings and a forecast query.
+    private static final long STARTUP_BUDGET_MILLIS = 50;
+    private static final long MAIN_THREAD_TIMEOUT_SECONDS = 10;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MainThreadIoMonitor.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        MainThreadIoMonitor.reset();
+        super.tearDown();
+    }
+
+    public void testMainThreadAccessIsRecorded() throws Throwable {
+        if (!MainThreadIoMonitor.ENABLED) {
+            return;
+        }
+        MainThreadRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                queryWeather();
+                MainThreadIoMonitor.getDefaultSharedPreferences(mContext, "prefs:test");
+            }
+        }, MAIN_THREAD_TIMEOUT_SECONDS);
+
+        List<MainThreadIoMonitor.Record> records = MainThreadIoMonitor.getRecords();
+        assertEquals("Error: Wrong number of main thread accesses recorded", 2, records.size());
+        assertTrue("Error: Provider query not recorded",
+                records.get(0).operation.startsWith("provider:query"));
+        assertEquals("Error: Preference read not recorded", "prefs:test",
+                records.get(1).operation);
+    }
+
+    public void testBackgroundAccessIsNotRecorded() {
+        // Tests don't run on the main thread.
+        queryWeather();
+        MainThreadIoMonitor.getDefaultSharedPreferences(mContext, "prefs:test");
+        assertEquals("Error: Background access recorded", 0, MainThreadIoMonitor.getAccessCount());
+    }
+
+    public void testStackCapturedOncePerOperation() throws Throwable {
+        if (!MainThreadIoMonitor.ENABLED) {
+            return;
+        }
+        MainThreadRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    MainThreadIoMonitor.getDefaultSharedPreferences(mContext, "prefs:test");
+                }
+            }
+        }, MAIN_THREAD_TIMEOUT_SECONDS);
+
+        List<MainThreadIoMonitor.Record> records = MainThreadIoMonitor.getRecords();
+        assertEquals("Error: Wrong number of main thread accesses recorded", 3, records.size());
+        assertNotNull("Error: No stack the first time", records.get(0).stack);
+        assertNull("Error: Stack captured again", records.get(1).stack);
+        assertNull("Error: Stack captured again", records.get(2).stack);
+    }
+
+    public void testStartupReadsWithinBudget() throws Throwable {
+        MainThreadRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                SettingsSnapshot.refresh(mContext);
+                Utility.getPreferredLocation(mContext);
+                Utility.isMetric(mContext);
+                queryWeather();
+            }
+        }, MAIN_THREAD_TIMEOUT_SECONDS);
+        MainThreadIoMonitor.assertWithinBudget(STARTUP_BUDGET_MILLIS);
+    }
+
+    private void queryWeather() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+    Feeds forecast deltas to ForecastDeltaApplier the way MyGcmListenerService receives them,
+    and checks what ends up in the provider.
+ */
+public class TestForecastDeltaApplier extends AndroidTestCase {
+    private static final String TEST_LOCATION = "99705";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteTestRecords();
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTestRecords();
+        super.tearDown();
+    }
+
+    private void deleteTestRecords() {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID}, LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TEST_LOCATION}, null);
+        while (cursor.moveToNext()) {
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                    new String[]{Long.toString(cursor.getLong(0))});
+        }
+        cursor.close();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{TEST_LOCATION});
+        mContext.getSharedPreferences(ForecastDeltaApplier.PREFS_NAME, 0).edit()
+                .remove(ForecastDeltaApplier.KEY_SEQUENCE_PREFIX + TEST_LOCATION)
+                .commit();
+    }
+
+    /*
+        Stands in for the server: builds the GCM data bundle for a delta with one day per
+        weather id, starting at TEST_DATE.
+     */
+    private static Bundle createMessage(String location, long sequence, int... weatherIds)
+            throws JSONException {
+        JSONArray days = new JSONArray();
+        for (int i = 0; i < weatherIds.length; i++) {
+            days.put(new JSONObject()
+                    .put("date", TEST_DATE + i * DAY_IN_MILLIS)
+                    .put("weather_id", weatherIds[i])
+                    .put("main", "Clear")
+                    .put("max", 21.5)
+                    .put("min", 10.1)
+                    .put("humidity", 40)
+                    .put("pressure", 1012.3)
+                    .put("speed", 3.2)
+                    .put("deg", 270));
+        }
+        JSONObject delta = new JSONObject()
+                .put("location", location)
+                .put("seq", sequence)
+                .put("days", days);
+        Bundle data = new Bundle();
+        data.putString(ForecastDeltaApplier.EXTRA_FORECAST_DELTA, delta.toString());
+        return data;
+    }
+
+    private int getWeatherId(long date) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, date),
+                new String[]{WeatherEntry.COLUMN_WEATHER_ID}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getDayCount() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)},
+                null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testDeltasReplaceChangedDays() throws JSONException {
+        assertEquals("Error: The first delta has nothing to follow on from",
+                ForecastDeltaApplier.RESULT_APPLIED_AFTER_GAP,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 1,
+                        800, 801, 802)));
+        assertEquals(3, getDayCount());
+
+        // Only the second day changed.
+        assertEquals(ForecastDeltaApplier.RESULT_APPLIED,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 2,
+                        800, 500)));
+        assertEquals("Error: Changed days should replace the old ones", 3, getDayCount());
+        assertEquals(800, getWeatherId(TEST_DATE));
+        assertEquals(500, getWeatherId(TEST_DATE + DAY_IN_MILLIS));
+        assertEquals(802, getWeatherId(TEST_DATE + 2 * DAY_IN_MILLIS));
+    }
+
+    public void testSequenceGapAsksForFullSync() throws JSONException {
+        ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 1, 800));
+        assertEquals(ForecastDeltaApplier.RESULT_APPLIED_AFTER_GAP,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 3, 600)));
+        assertEquals("Error: A delta after a gap should still be applied",
+                600, getWeatherId(TEST_DATE));
+    }
+
+    public void testStaleDeltasAreDropped() throws JSONException {
+        ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 5, 800));
+        assertEquals(ForecastDeltaApplier.RESULT_STALE,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 4, 200)));
+        assertEquals(ForecastDeltaApplier.RESULT_STALE,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage(TEST_LOCATION, 5, 200)));
+        assertEquals(800, getWeatherId(TEST_DATE));
+    }
+
+    public void testUnknownLocationAndBadDeltasAreDropped() throws JSONException {
+        assertEquals(ForecastDeltaApplier.RESULT_UNKNOWN_LOCATION,
+                ForecastDeltaApplier.applyMessage(mContext, createMessage("nowhere", 1, 800)));
+
+        Bundle data = new Bundle();
+        data.putString(ForecastDeltaApplier.EXTRA_FORECAST_DELTA, "{\"location\": \""
+                + TEST_LOCATION + "\", \"seq\": 1, \"days\": [{\"date\": 0}]}");
+        assertEquals(ForecastDeltaApplier.RESULT_INVALID,
+                ForecastDeltaApplier.applyMessage(mContext, data));
+        assertEquals("Error: A bad delta shouldn't change anything", 0, getDayCount());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import junit.framework.Assert;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs test code on the main thread, for what the app only does there, and waits for it.
+ */
+public class MainThreadRunner {
+
+    private MainThreadRunner() {
+    }
+
+    /**
+     * Runs the runnable on the main thread and rethrows whatever it threw, including failed
+     * assertions, on the calling thread.
+     */
+    public static void run(final Runnable runnable, long timeoutSeconds) throws Throwable {
+        final Throwable[] thrown = new Throwable[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        Assert.assertTrue("Error: Timed out on the main thread",
+                done.await(timeoutSeconds, TimeUnit.SECONDS));
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * Formats the day labels used throughout Sunshine ("Today, June 24", "Tomorrow", "Wednesday",
+ * "Mon Jun 08", ...) and caches them by julian day and style.
+ *
+ * The labels for a given day only change when the current day changes, or when the locale or
+ * time zone does, so the cache is dropped at local midnight and on those broadcasts.  All
+ * methods are safe to call from the main, widget and sync threads.
+ */
+public class DayLabelFormatter {
+    // "Wednesday" for the coming week, "Mon Jun 08" after that
+    public static final int STYLE_FRIENDLY = 0;
+    // As STYLE_FRIENDLY, but today is shown as "Today, June 24"
+    public static final int STYLE_FRIENDLY_LONG_TODAY = 1;
+    // "Wednesday, June 24"
+    public static final int STYLE_FULL_FRIENDLY = 2;
+    // "Today", "Tomorrow" or "Wednesday"
+    public static final int STYLE_DAY_NAME = 3;
+    // "June 24"
+    public static final int STYLE_MONTH_DAY = 4;
+    private static final int STYLE_COUNT = 5;
+
+    private static DayLabelFormatter sInstance;
+
+    private final Context mContext;
+    private final SparseArray<String>[] mLabels;
+
+    private TimeZone mTimeZone;
+    private SimpleDateFormat mShortenedDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    // The day and offset the cached labels were built for
+    private int mCurrentJulianDay;
+    private int mGmtOffset;
+
+    private final BroadcastReceiver mInvalidationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized DayLabelFormatter getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DayLabelFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @SuppressWarnings("unchecked")
+    private DayLabelFormatter(Context context) {
+        mContext = context;
+        mLabels = new SparseArray[STYLE_COUNT];
+        for (int i = 0; i < STYLE_COUNT; i++) {
+            mLabels[i] = new SparseArray<String>();
+        }
+        invalidate();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        mContext.registerReceiver(mInvalidationReceiver, filter);
+    }
+
+    /**
+     * Drops every cached label and rebuilds the formats for the current locale and time zone.
+     */
+    public synchronized void invalidate() {
+        for (SparseArray<String> labels : mLabels) {
+            labels.clear();
+        }
+        mTimeZone = TimeZone.getDefault();
+        mShortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+        mDayFormat = new SimpleDateFormat("EEEE");
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        mCurrentJulianDay = 0;
+    }
+
+    /**
+     * @param dateInMillis The date in milliseconds
+     * @param style One of the STYLE_ constants
+     * @return the label for that day
+     */
+    public synchronized String format(long dateInMillis, int style) {
+        long now = System.currentTimeMillis();
+        int gmtOffset = mTimeZone.getOffset(now) / 1000;
+        int currentJulianDay = Time.getJulianDay(now, gmtOffset);
+        if (currentJulianDay != mCurrentJulianDay || gmtOffset != mGmtOffset) {
+            // It's a new day (or we crossed a DST change), so "Today" and friends have moved.
+            for (SparseArray<String> labels : mLabels) {
+                labels.clear();
+            }
+            mCurrentJulianDay = currentJulianDay;
+            mGmtOffset = gmtOffset;
+        }
+
+        int julianDay = Time.getJulianDay(dateInMillis, gmtOffset);
+        SparseArray<String> labels = mLabels[style];
+        String label = labels.get(julianDay);
+        if (null == label) {
+            label = buildLabel(dateInMillis, julianDay, style);
+            labels.put(julianDay, label);
+        }
+        return label;
+    }
+
+    private String buildLabel(long dateInMillis, int julianDay, int style) {
+        switch (style) {
+            case STYLE_FRIENDLY_LONG_TODAY:
+                // If the date we're building the String for is today's date, the format
+                // is "Today, June 24"
+                if (julianDay == mCurrentJulianDay) {
+                    return mContext.getString(R.string.format_full_friendly_date,
+                            mContext.getString(R.string.today),
+                            format(dateInMillis, STYLE_MONTH_DAY));
+                }
+                return format(dateInMillis, STYLE_FRIENDLY);
+            case STYLE_FRIENDLY:
+                if (julianDay < mCurrentJulianDay + 7) {
+                    // If the input date is less than a week in the future, just return the day name.
+                    return format(dateInMillis, STYLE_DAY_NAME);
+                }
+                // Otherwise, use the form "Mon Jun 3"
+                return mShortenedDateFormat.format(dateInMillis);
+            case STYLE_FULL_FRIENDLY:
+                return mContext.getString(R.string.format_full_friendly_date,
+                        format(dateInMillis, STYLE_DAY_NAME),
+                        format(dateInMillis, STYLE_MONTH_DAY));
+            case STYLE_DAY_NAME:
+                // If the date is today, return the localized version of "Today" instead of the
+                // actual day name.
+                if (julianDay == mCurrentJulianDay) {
+                    return mContext.getString(R.string.today);
+                } else if (julianDay == mCurrentJulianDay + 1) {
+                    return mContext.getString(R.string.tomorrow);
+                }
+                // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                return mDayFormat.format(dateInMillis);
+            case STYLE_MONTH_DAY:
+                return mMonthDayFormat.format(dateInMillis);
+            default:
+                throw new IllegalArgumentException("Unknown day label style: " + style);
+        }
+    }
+}
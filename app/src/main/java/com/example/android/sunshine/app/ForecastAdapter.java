@@ -30,7 +30,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -44,7 +44,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
+    private static final ForecastDay[] NO_DAYS = new ForecastDay[0];
+
     private Cursor mCursor;
+    private ForecastDay[] mDays = NO_DAYS;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +76,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                // The row is on its way out, e.g. during its remove animation.
+                return;
+            }
+            mClickHandler.onClick(mDays[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +93,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by date, which lets the choice manager follow them across diffs.
+        // This has to be set before the choice manager registers its observer.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -114,7 +122,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     break;
                 }
             }
+            long token = ListFrameMetrics.begin();
             View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            ListFrameMetrics.endInflate(token, viewType);
             view.setFocusable(true);
             return new ForecastAdapterViewHolder(view);
         } else {
@@ -124,26 +134,28 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Everything shown in the row was formatted by the loader, so binding only sets fields.
+        long token = ListFrameMetrics.begin();
+        ForecastDay day = mDays[position];
         int defaultImage;
-        boolean useLongToday;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = day.artResourceId;
+                dateText = day.longDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = day.iconResourceId;
+                dateText = day.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == day.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(day.artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,38 +163,25 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, day.transitionName);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(day.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(day.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(day.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(day.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(day.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(day.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        ListFrameMetrics.endBind(token, forecastAdapterViewHolder.getItemViewType());
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -208,13 +207,43 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mDays.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mDays[position].date;
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastDay[] oldDays = mDays;
+        ForecastDiff diff = null;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if ( newCursor instanceof ForecastLoader.ForecastCursor ) {
+            ForecastLoader.ForecastCursor forecastCursor = (ForecastLoader.ForecastCursor) newCursor;
+            mDays = forecastCursor.getDays();
+            diff = forecastCursor.getDiffFrom(oldDays);
+        } else if ( null != newCursor ) {
+            mDays = ForecastDay.fromCursor(mContext, newCursor);
+        } else {
+            mDays = NO_DAYS;
+        }
+
+        if ( null == diff ) {
+            notifyDataSetChanged();
+        } else {
+            // Only rebind the rows that actually changed, so unchanged rows keep their images
+            diff.dispatchUpdatesTo(this);
+            if ( mUseTodayLayout && mDays.length > 0 &&
+                    (oldDays.length == 0 || oldDays[0].date != mDays[0].date) ) {
+                // A different day moved into the first slot, so the rows around it need
+                // to switch between the today and future day layouts.
+                notifyItemChanged(0);
+                if ( mDays.length > 1 ) {
+                    notifyItemChanged(1);
+                }
+            }
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -222,6 +251,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mCursor;
     }
 
+    public ForecastDay[] getDays() {
+        return mDays;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
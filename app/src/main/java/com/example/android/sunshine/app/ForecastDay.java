@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+/**
+ * One day of the forecast list, with every string the list row and detail view show already
+ * formatted.
+ * Instances are built off the main thread by {@link ForecastLoader} so that
+ * {@link ForecastAdapter#onBindViewHolder} only has to copy fields into views.
+ */
+public class ForecastDay {
+    public final long id;
+    public final long date;
+    public final String locationSetting;
+    public final int weatherId;
+
+    public final int iconResourceId;
+    public final int artResourceId;
+    // Only set when a remote art pack is selected.
+    public final String artUrl;
+
+    // "Wednesday" style label, and the "Today, June 24" label used by the today layout
+    public final String dateText;
+    public final String longDateText;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String highText;
+    public final String highContentDescription;
+    public final String lowText;
+    public final String lowContentDescription;
+
+    // Only shown by the detail view
+    public final double high;
+    public final double low;
+    public final String fullDateText;
+    public final String humidityText;
+    public final String pressureText;
+    public final String windText;
+
+    // Stable across data set changes, unlike the adapter position
+    public final String transitionName;
+
+    private ForecastDay(Context context, Cursor cursor) {
+        id = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        locationSetting = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        iconResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = Utility.usingLocalGraphics(context)
+                ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        longDateText = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        highText = Utility.formatTemperature(context, high);
+        highContentDescription = context.getString(R.string.a11y_high_temp, highText);
+        low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        lowText = Utility.formatTemperature(context, low);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, lowText);
+
+        fullDateText = Utility.getFullFriendlyDayString(context, date);
+        humidityText = context.getString(R.string.format_humidity,
+                cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY));
+        pressureText = context.getString(R.string.format_pressure,
+                cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE));
+        windText = Utility.getFormattedWind(context,
+                cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES));
+
+        transitionName = "iconView" + date;
+    }
+
+    /**
+     * Returns true if the other day would render exactly the same row as this one.
+     */
+    boolean hasSameContents(ForecastDay other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && TextUtils.equals(locationSetting, other.locationSetting)
+                && TextUtils.equals(artUrl, other.artUrl)
+                && TextUtils.equals(dateText, other.dateText)
+                && TextUtils.equals(longDateText, other.longDateText)
+                && TextUtils.equals(description, other.description)
+                && TextUtils.equals(highText, other.highText)
+                && TextUtils.equals(lowText, other.lowText)
+                && TextUtils.equals(fullDateText, other.fullDateText)
+                && TextUtils.equals(humidityText, other.humidityText)
+                && TextUtils.equals(pressureText, other.pressureText)
+                && TextUtils.equals(windText, other.windText);
+    }
+
+    /**
+     * Converts every row of a forecast cursor, which must use ForecastFragment's projection.
+     * The cursor position is left after the last row.
+     */
+    static ForecastDay[] fromCursor(Context context, Cursor cursor) {
+        ForecastDay[] days = new ForecastDay[cursor.getCount()];
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            days[cursor.getPosition()] = new ForecastDay(context, cursor);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The item level changes between two forecast lists, keyed by date and location.  Both lists
+ * come from the provider sorted by ascending date, so the diff is a single merge pass.
+ */
+public class ForecastDiff {
+    private static final int OP_CHANGE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_REMOVE = 2;
+
+    private final int[] mOps;
+    private final int[] mPositions;
+    private int mCount;
+
+    private ForecastDiff(int maxOps) {
+        mOps = new int[maxOps];
+        mPositions = new int[maxOps];
+    }
+
+    private void add(int op, int position) {
+        mOps[mCount] = op;
+        mPositions[mCount] = position;
+        mCount++;
+    }
+
+    /**
+     * Computes the changes that turn oldDays into newDays.
+     *
+     * @return the diff, or null if the lists are for different locations and can't be compared
+     */
+    static ForecastDiff compute(ForecastDay[] oldDays, ForecastDay[] newDays) {
+        if (oldDays.length > 0 && newDays.length > 0 &&
+                !oldDays[0].locationSetting.equals(newDays[0].locationSetting)) {
+            return null;
+        }
+
+        ForecastDiff diff = new ForecastDiff(oldDays.length + newDays.length);
+        int oldIndex = 0;
+        int newIndex = 0;
+        // The adapter position the next operation applies to, once the previous ones are applied
+        int position = 0;
+        while (oldIndex < oldDays.length && newIndex < newDays.length) {
+            ForecastDay oldDay = oldDays[oldIndex];
+            ForecastDay newDay = newDays[newIndex];
+            if (oldDay.date < newDay.date) {
+                diff.add(OP_REMOVE, position);
+                oldIndex++;
+            } else if (oldDay.date > newDay.date) {
+                diff.add(OP_INSERT, position);
+                newIndex++;
+                position++;
+            } else {
+                if (!oldDay.hasSameContents(newDay)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+        for (; oldIndex < oldDays.length; oldIndex++) {
+            diff.add(OP_REMOVE, position);
+        }
+        for (; newIndex < newDays.length; newIndex++) {
+            diff.add(OP_INSERT, position++);
+        }
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * Notifies the adapter of each change, in order.  The adapter must already hold the new list.
+     */
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mCount; i++) {
+            switch (mOps[i]) {
+                case OP_CHANGE:
+                    adapter.notifyItemChanged(mPositions[i]);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemInserted(mPositions[i]);
+                    break;
+                case OP_REMOVE:
+                    adapter.notifyItemRemoved(mPositions[i]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * {@link CursorLoader} for the forecast list that also converts the rows into
+ * {@link ForecastDay} models while it is still on the loader's background thread.  Each load is
+ * also diffed against the previous one there, so the adapter can dispatch item level changes.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, carrying the day models built from it.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastDay[] mDays;
+        private final ForecastDay[] mPreviousDays;
+        private final ForecastDiff mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastDay[] days, ForecastDay[] previousDays,
+                       ForecastDiff diff) {
+            super(cursor);
+            mDays = days;
+            mPreviousDays = previousDays;
+            mDiff = diff;
+        }
+
+        public ForecastDay[] getDays() {
+            return mDays;
+        }
+
+        /**
+         * Returns the changes from the given days to this cursor's days, or null if they were
+         * not computed against that list.
+         */
+        public ForecastDiff getDiffFrom(ForecastDay[] days) {
+            return days == mPreviousDays ? mDiff : null;
+        }
+    }
+
+    // The days of the last load, which the next load is diffed against
+    private ForecastDay[] mPreviousDays;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ForecastDay[] days = ForecastDay.fromCursor(getContext(), cursor);
+        ForecastDay[] previousDays = mPreviousDays;
+        ForecastDiff diff = previousDays == null ? null : ForecastDiff.compute(previousDays, days);
+        mPreviousDays = days;
+        return new ForecastCursor(cursor, days, previousDays, diff);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Keeps the day models most recently shown by the forecast list, so that the detail screen can
+ * bind the tapped day straight away instead of waiting for its own query.  The detail screen's
+ * loader still runs afterwards to confirm the data is current.
+ */
+public class ForecastRepository {
+    private static final ForecastDay[] NO_DAYS = new ForecastDay[0];
+
+    private static volatile ForecastDay[] sDays = NO_DAYS;
+
+    private ForecastRepository() {
+    }
+
+    /**
+     * Replaces the held days.  The days must be sorted by ascending date, as the list is.
+     */
+    public static void setDays(ForecastDay[] days) {
+        sDays = days == null ? NO_DAYS : days;
+    }
+
+    /**
+     * @param weatherUri a uri built by WeatherEntry.buildWeatherLocationWithDate
+     * @return the held day for that location and date, or null if the list doesn't have it
+     */
+    public static ForecastDay getDay(Uri weatherUri) {
+        ForecastDay[] days = sDays;
+        int position = getPosition(days, weatherUri);
+        return position < 0 ? null : days[position];
+    }
+
+    /**
+     * @return the held days either side of the given day; the entries are null where there
+     * is no such day
+     */
+    public static ForecastDay[] getNeighbours(Uri weatherUri) {
+        ForecastDay[] days = sDays;
+        ForecastDay[] neighbours = new ForecastDay[2];
+        int position = getPosition(days, weatherUri);
+        if (position >= 0) {
+            neighbours[0] = position > 0 ? days[position - 1] : null;
+            neighbours[1] = position < days.length - 1 ? days[position + 1] : null;
+        }
+        return neighbours;
+    }
+
+    private static int getPosition(ForecastDay[] days, Uri weatherUri) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(weatherUri);
+        long date = WeatherContract.WeatherEntry.getDateFromUri(weatherUri);
+
+        // The list is sorted by date, so binary search it.
+        int low = 0;
+        int high = days.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleDate = days[middle].date;
+            if (middleDate < date) {
+                low = middle + 1;
+            } else if (middleDate > date) {
+                high = middle - 1;
+            } else {
+                return locationSetting.equals(days[middle].locationSetting) ? middle : -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -28,8 +28,8 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  With an
+ * adapter that has stable ids, selections follow their items across data set changes.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -41,8 +41,33 @@ public class ItemChoiceManager {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            confirmCheckedPositions();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            confirmCheckedPositions();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            confirmCheckedPositions();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            confirmCheckedPositions();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            confirmCheckedPositions();
+        }
+
+        private void confirmCheckedPositions() {
+            // A single data set swap can be dispatched as many item events, so just note that
+            // the positions need checking and do it once, the next time they're asked for.
+            mCheckedPositionsStale = true;
         }
     };
 
@@ -53,14 +78,20 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
+     * Set when the adapter's data has changed and the checked positions have not yet been
+     * matched up with the checked IDs again.
+     */
+    private boolean mCheckedPositionsStale;
+
+    /**
+     * Position of every id in the adapter, rebuilt at most once per data set change and only
+     * if a checked item has moved.
      */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
+    private final LongSparseArray<Integer> mPositionsById = new LongSparseArray<Integer>();
 
     /**
      * Running state of which positions are currently checked
@@ -78,6 +109,7 @@ public class ItemChoiceManager {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
             return;
 
+        ensureCheckedPositions();
         int checkedItemCount = mCheckStates.size();
         int position = vh.getAdapterPosition();
 
@@ -107,8 +139,7 @@ public class ItemChoiceManager {
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE: {
-                boolean checked = mCheckStates.get(position, false);
-                mCheckStates.put(position, !checked);
+                setItemChecked(position, !mCheckStates.get(position, false));
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -146,39 +177,65 @@ public class ItemChoiceManager {
      * @see #setChoiceMode(int)
      */
     public boolean isItemChecked(int position) {
+        ensureCheckedPositions();
         return mCheckStates.get(position);
     }
 
+    /**
+     * Sets the checked state of the specified position, as a click in
+     * AbsListView.CHOICE_MODE_MULTIPLE would.  Does not rebind the item.
+     *
+     * @param position The item whose checked state is to be set
+     * @param checked The new checked state for the item
+     */
+    void setItemChecked(int position, boolean checked) {
+        ensureCheckedPositions();
+        if (checked) {
+            mCheckStates.put(position, true);
+            mCheckedIdStates.put(mAdapter.getItemId(position), position);
+        } else {
+            mCheckStates.delete(position);
+            mCheckedIdStates.delete(mAdapter.getItemId(position));
+        }
+    }
+
     void clearSelections() {
         mCheckStates.clear();
         mCheckedIdStates.clear();
+        mCheckedPositionsStale = false;
+    }
+
+    private void ensureCheckedPositions() {
+        if (mCheckedPositionsStale) {
+            mCheckedPositionsStale = false;
+            if (mAdapter.hasStableIds()) {
+                confirmCheckedPositionsById(mAdapter.getItemCount());
+            }
+        }
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
+    void confirmCheckedPositionsById(int itemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
+        boolean indexBuilt = false;
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            final long lastPosId = lastPos < itemCount
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
+                // The item moved or went away; look it up by ID.
+                if (!indexBuilt) {
+                    buildPositionIndex(itemCount);
+                    indexBuilt = true;
                 }
-
-                if (!found) {
+                final Integer newPos = mPositionsById.get(id);
+                if (null != newPos) {
+                    mCheckStates.put(newPos, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, newPos);
+                } else {
                     mCheckedIdStates.delete(id);
                     checkedIndex--;
                 }
@@ -186,6 +243,14 @@ public class ItemChoiceManager {
                 mCheckStates.put(lastPos, true);
             }
         }
+        mPositionsById.clear();
+    }
+
+    private void buildPositionIndex(int itemCount) {
+        mPositionsById.clear();
+        for (int position = 0; position < itemCount; position++) {
+            mPositionsById.append(mAdapter.getItemId(position), position);
+        }
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -203,6 +268,7 @@ public class ItemChoiceManager {
             inParcel.unmarshall(states, 0, states.length);
             inParcel.setDataPosition(0);
             mCheckStates = inParcel.readSparseBooleanArray();
+            mCheckedPositionsStale = false;
             final int numStates = inParcel.readInt();
             mCheckedIdStates.clear();
             for (int i=0; i<numStates; i++) {
@@ -214,6 +280,7 @@ public class ItemChoiceManager {
     }
 
     public void onSaveInstanceState(Bundle outState) {
+        ensureCheckedPositions();
         Parcel outParcel = Parcel.obtain();
         outParcel.writeSparseBooleanArray(mCheckStates);
         final int numStates = mCheckedIdStates.size();
@@ -228,6 +295,7 @@ public class ItemChoiceManager {
     }
 
     public int getSelectedItemPosition() {
+        ensureCheckedPositions();
         if ( mCheckStates.size() == 0 ) {
             return RecyclerView.NO_POSITION;
         } else {
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug-build frame and bind timing for the forecast list.  While the list is scrolling, every
+ * frame is timed with a {@link Choreographer} callback and frames that miss a vsync are counted
+ * as janky.  {@link ForecastAdapter} also reports how long each inflate and bind took, per view
+ * type.  The numbers can be dumped from the forecast menu, or checked at the end of an
+ * instrumentation test with {@link #assertWithinBudget(int, long)}.
+ *
+ * In release builds every method does nothing.
+ */
+public class ListFrameMetrics {
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    private static final long FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    // A frame that took this long missed at least one vsync.
+    private static final long JANK_THRESHOLD_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+
+    // ForecastAdapter has two view types; leave room for more.
+    private static final int MAX_VIEW_TYPES = 4;
+
+    private static final long NOT_TRACING = -1;
+
+    private static final Object sLock = new Object();
+    private static int sFrameCount;
+    private static int sJankyFrameCount;
+    private static long sMaxFrameNanos;
+    private static final Timing[] sBindTimings = createTimings();
+    private static final Timing[] sInflateTimings = createTimings();
+
+    /**
+     * Count, total and worst duration of one kind of work.
+     */
+    public static class Timing {
+        public int count;
+        public long totalNanos;
+        public long maxNanos;
+
+        void add(long durationNanos) {
+            count++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+        }
+
+        public long getAverageMicros() {
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / count);
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+        }
+
+        @Override
+        public String toString() {
+            return count + " x avg " + getAverageMicros() + "us, max " + getMaxMicros() + "us";
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameTracker implements Choreographer.FrameCallback {
+        private boolean mRunning;
+        private long mLastFrameNanos;
+
+        void start() {
+            if (!mRunning) {
+                mRunning = true;
+                mLastFrameNanos = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        void stop() {
+            if (mRunning) {
+                mRunning = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameNanos != 0) {
+                recordFrame(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            if (mRunning) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+
+    private ListFrameMetrics() {
+    }
+
+    private static Timing[] createTimings() {
+        Timing[] timings = new Timing[MAX_VIEW_TYPES];
+        for (int i = 0; i < MAX_VIEW_TYPES; i++) {
+            timings[i] = new Timing();
+        }
+        return timings;
+    }
+
+    /**
+     * Times frames whenever the given list is scrolling.  Frame callbacks need Jelly Bean, so
+     * on older devices only the bind and inflate timings are collected.
+     */
+    public static void trackScrolling(RecyclerView recyclerView) {
+        if (!ENABLED || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        final FrameTracker tracker = new FrameTracker();
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    tracker.stop();
+                } else {
+                    tracker.start();
+                }
+            }
+        });
+    }
+
+    private static void recordFrame(long frameNanos) {
+        synchronized (sLock) {
+            sFrameCount++;
+            if (frameNanos >= JANK_THRESHOLD_NANOS) {
+                sJankyFrameCount++;
+            }
+            sMaxFrameNanos = Math.max(sMaxFrameNanos, frameNanos);
+        }
+    }
+
+    /**
+     * Starts timing a bind or inflate.
+     *
+     * @return a token to hand to {@link #endBind(long, int)} or {@link #endInflate(long, int)}
+     */
+    public static long begin() {
+        return ENABLED ? System.nanoTime() : NOT_TRACING;
+    }
+
+    public static void endBind(long token, int viewType) {
+        end(token, viewType, sBindTimings);
+    }
+
+    public static void endInflate(long token, int viewType) {
+        end(token, viewType, sInflateTimings);
+    }
+
+    private static void end(long token, int viewType, Timing[] timings) {
+        if (token == NOT_TRACING || viewType < 0 || viewType >= MAX_VIEW_TYPES) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - token;
+        synchronized (sLock) {
+            timings[viewType].add(durationNanos);
+        }
+    }
+
+    public static int getFrameCount() {
+        synchronized (sLock) {
+            return sFrameCount;
+        }
+    }
+
+    public static int getJankyFrameCount() {
+        synchronized (sLock) {
+            return sJankyFrameCount;
+        }
+    }
+
+    public static Timing getBindTiming(int viewType) {
+        return copy(sBindTimings[viewType]);
+    }
+
+    public static Timing getInflateTiming(int viewType) {
+        return copy(sInflateTimings[viewType]);
+    }
+
+    private static Timing copy(Timing timing) {
+        Timing copy = new Timing();
+        synchronized (sLock) {
+            copy.count = timing.count;
+            copy.totalNanos = timing.totalNanos;
+            copy.maxNanos = timing.maxNanos;
+        }
+        return copy;
+    }
+
+    public static void reset() {
+        synchronized (sLock) {
+            sFrameCount = 0;
+            sJankyFrameCount = 0;
+            sMaxFrameNanos = 0;
+            for (int i = 0; i < MAX_VIEW_TYPES; i++) {
+                sBindTimings[i] = new Timing();
+                sInflateTimings[i] = new Timing();
+            }
+        }
+    }
+
+    /**
+     * @return a human readable summary of everything recorded since the last {@link #reset()}
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        synchronized (sLock) {
+            dump.append("Frames: ").append(sFrameCount)
+                    .append(", janky: ").append(sJankyFrameCount)
+                    .append(", worst: ").append(TimeUnit.NANOSECONDS.toMillis(sMaxFrameNanos))
+                    .append("ms");
+            for (int viewType = 0; viewType < MAX_VIEW_TYPES; viewType++) {
+                if (sBindTimings[viewType].count > 0 || sInflateTimings[viewType].count > 0) {
+                    dump.append("\nView type ").append(viewType)
+                            .append("\n  inflate: ").append(sInflateTimings[viewType])
+                            .append("\n  bind: ").append(sBindTimings[viewType]);
+                }
+            }
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Fails if more than maxJankyFrames janky frames were seen, or any single bind took longer
+     * than maxBindMicros, since the last {@link #reset()}.  Meant to be called at the end of
+     * instrumentation tests that scroll the list.
+     *
+     * @throws AssertionError with the full dump if the budget was exceeded
+     */
+    public static void assertWithinBudget(int maxJankyFrames, long maxBindMicros) {
+        boolean overBudget = getJankyFrameCount() > maxJankyFrames;
+        for (int viewType = 0; viewType < MAX_VIEW_TYPES; viewType++) {
+            overBudget |= getBindTiming(viewType).getMaxMicros() > maxBindMicros;
+        }
+        if (overBudget) {
+            throw new AssertionError("List frame budget exceeded (" + maxJankyFrames
+                    + " janky frames, " + maxBindMicros + "us per bind)\n" + dump());
+        }
+    }
+}
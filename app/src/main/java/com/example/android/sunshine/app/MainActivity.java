@@ -15,10 +15,13 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
@@ -36,6 +39,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
+import java.lang.ref.WeakReference;
+
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -45,10 +50,13 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private boolean mTwoPane;
     private String mLocation;
+    private StartupInitializer mStartupInitializer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mStartupInitializer = new StartupInitializer(this);
         super.onCreate(savedInstanceState);
+        MainThreadIoMonitor.install();
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
@@ -89,26 +97,84 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
-
+        // None of this is needed to show the cached forecast, so it waits until the first frame
+        // is up and then runs in the background.
+        // The sync account has to exist before anything can sync, so it goes first.  Looking it
+        // up goes through the AccountManager, which reads from disk.
+        mStartupInitializer.add(StartupInitializer.PRIORITY_HIGH, "initializeSyncAdapter",
+                new InitializeSyncAdapterTask(getApplicationContext()));
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
         // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+        mStartupInitializer.add(StartupInitializer.PRIORITY_NORMAL, "checkPlayServices",
+                new CheckPlayServicesTask(this));
+        mStartupInitializer.startAfterFirstFrame();
+    }
+
+    // The startup tasks run on a background thread that can outlive the activity, for example
+    // across a rotation, so they're static and only reach the activity through a weak reference.
+
+    private static class InitializeSyncAdapterTask implements Runnable {
+        private final Context mAppContext;
+
+        InitializeSyncAdapterTask(Context appContext) {
+            mAppContext = appContext;
+        }
+
+        @Override
+        public void run() {
+            SunshineSyncAdapter.initializeSyncAdapter(mAppContext);
+        }
+    }
+
+    private static class CheckPlayServicesTask implements Runnable {
+        private final Context mAppContext;
+        private final WeakReference<MainActivity> mActivity;
+
+        CheckPlayServicesTask(MainActivity activity) {
+            mAppContext = activity.getApplicationContext();
+            mActivity = new WeakReference<MainActivity>(activity);
+        }
+
+        @Override
+        public void run() {
+            final int resultCode = GoogleApiAvailability.getInstance()
+                    .isGooglePlayServicesAvailable(mAppContext);
+            if (resultCode == ConnectionResult.SUCCESS) {
+                registerWithGcm(mAppContext);
+                return;
             }
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    MainActivity activity = mActivity.get();
+                    if (activity != null) {
+                        activity.onPlayServicesUnavailable(resultCode);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts the IntentService that registers this application with GCM, unless we already
+     * have a token.  Called off the main thread.
+     */
+    private static void registerWithGcm(Context context) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+        if (!sentToken) {
+            Intent intent = new Intent(context, RegistrationIntentService.class);
+            context.startService(intent);
         }
     }
 
+    @Override
+    public void onForecastShown() {
+        mStartupInitializer.onForecastVisible();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -177,23 +243,21 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     }
 
     /**
-     * Check the device to make sure it has the Google Play Services APK. If
-     * it doesn't, display a dialog that allows users to download the APK from
-     * the Google Play Store or enable it in the device's system settings.
+     * Called when the device doesn't have an up to date Google Play Services APK. Displays a
+     * dialog that allows users to download the APK from the Google Play Store or enable it in
+     * the device's system settings.
      */
-    private boolean checkPlayServices() {
+    private void onPlayServicesUnavailable(int resultCode) {
+        if (isFinishing()) {
+            return;
+        }
         GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-        int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
-        if (resultCode != ConnectionResult.SUCCESS) {
-            if (apiAvailability.isUserResolvableError(resultCode)) {
-                apiAvailability.getErrorDialog(this, resultCode,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
-            }
-            return false;
+        if (apiAvailability.isUserResolvableError(resultCode)) {
+            apiAvailability.getErrorDialog(this, resultCode,
+                    PLAY_SERVICES_RESOLUTION_REQUEST).show();
+        } else {
+            Log.i(LOG_TAG, "This device is not supported.");
+            finish();
         }
-        return true;
     }
 }
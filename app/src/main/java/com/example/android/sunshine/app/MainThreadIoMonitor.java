@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug-build guard around the preference, provider and disk access that Sunshine performs on
+ * the main thread.  Each access made through this class while on the main thread is recorded
+ * along with its duration, and the first time an operation is seen, the stack that caused it.
+ * Jank regressions can then be spotted in logcat and asserted against in instrumentation tests
+ * with {@link #assertWithinBudget(long)}.  The weather provider reports its own calls, since it
+ * runs on whichever thread calls it.
+ *
+ * In release builds every method is a straight pass-through.
+ */
+public class MainThreadIoMonitor {
+    private static final String LOG_TAG = MainThreadIoMonitor.class.getSimpleName();
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // Any single access slower than this is logged as soon as it happens.
+    private static final long SLOW_ACCESS_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    // Keep the most recent records only, so a long session doesn't grow without bound.
+    private static final int MAX_RECORDS = 64;
+
+    private static final long NOT_TRACING = -1;
+
+    private static final List<Record> sRecords = new ArrayList<Record>();
+    // Operations whose stack has been captured already.  Capturing one is expensive, and after
+    // the first time it's almost always the same stack.
+    private static final Set<String> sSeenOperations = new HashSet<String>();
+    private static long sTotalNanos;
+    private static int sAccessCount;
+
+    /**
+     * A single main thread access.
+     */
+    public static class Record {
+        public final String operation;
+        public final long durationNanos;
+        // Null if the operation had been seen before.
+        public final Throwable stack;
+
+        Record(String operation, long durationNanos, Throwable stack) {
+            this.operation = operation;
+            this.durationNanos = durationNanos;
+            this.stack = stack;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " took " + TimeUnit.NANOSECONDS.toMicros(durationNanos) + "us";
+        }
+    }
+
+    private MainThreadIoMonitor() {
+    }
+
+    /**
+     * Turns on StrictMode disk checks for the main thread in debug builds, so that provider and
+     * file access we don't route through this class still shows up in logcat.
+     */
+    public static void install() {
+        if (!ENABLED) {
+            return;
+        }
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .build());
+    }
+
+    /**
+     * Starts timing an access.
+     *
+     * @return a token to hand to {@link #end(long, String)}
+     */
+    public static long begin() {
+        if (!ENABLED || Looper.myLooper() != Looper.getMainLooper()) {
+            return NOT_TRACING;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Finishes timing an access started with {@link #begin()}.  Does nothing if the access did
+     * not happen on the main thread.
+     *
+     * @param token the value returned by begin()
+     * @param operation short description of what was accessed, e.g. "prefs:isMetric"
+     */
+    public static void end(long token, String operation) {
+        if (token == NOT_TRACING) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - token;
+        Record record;
+        synchronized (sRecords) {
+            Throwable stack = sSeenOperations.add(operation) ? new Throwable(operation) : null;
+            record = new Record(operation, durationNanos, stack);
+            if (sRecords.size() == MAX_RECORDS) {
+                sRecords.remove(0);
+            }
+            sRecords.add(record);
+            sTotalNanos += durationNanos;
+            sAccessCount++;
+        }
+        if (durationNanos >= SLOW_ACCESS_NANOS) {
+            if (record.stack != null) {
+                Log.w(LOG_TAG, "Slow main thread I/O: " + record, record.stack);
+            } else {
+                Log.w(LOG_TAG, "Slow main thread I/O: " + record);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #end(long, String)} for a provider call, with the uri appended to the
+     * operation.  Only builds the operation's name when the call is being recorded.
+     */
+    public static void end(long token, String operation, Uri uri) {
+        if (token == NOT_TRACING) {
+            return;
+        }
+        end(token, operation + " " + uri.getPath());
+    }
+
+    /**
+     * Finishes timing a provider query.  A query's rows are only read when the cursor is first
+     * used, so when the query is being recorded they're read here, to count them as part of it.
+     *
+     * @return the cursor
+     */
+    public static Cursor endQuery(long token, Uri uri, Cursor cursor) {
+        if (token == NOT_TRACING) {
+            return cursor;
+        }
+        if (cursor != null) {
+            cursor.getCount();
+        }
+        end(token, "provider:query", uri);
+        return cursor;
+    }
+
+    /**
+     * Returns the default SharedPreferences, recording the lookup if it happens on the main
+     * thread.  Only the lookup is timed: the file is loaded on a background thread, and it's the
+     * first read that waits for it.  Code that reads straight away should time the reads as well,
+     * with {@link #begin()} and {@link #end(long, String)}, as {@link SettingsSnapshot} does.
+     */
+    public static SharedPreferences getDefaultSharedPreferences(Context context, String operation) {
+        long token = begin();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        end(token, operation);
+        return prefs;
+    }
+
+    /**
+     * Commits the editor, recording the write if it happens on the main thread.
+     */
+    public static boolean commit(SharedPreferences.Editor editor, String operation) {
+        long token = begin();
+        boolean result = editor.commit();
+        end(token, operation);
+        return result;
+    }
+
+    public static List<Record> getRecords() {
+        synchronized (sRecords) {
+            return new ArrayList<Record>(sRecords);
+        }
+    }
+
+    public static int getAccessCount() {
+        synchronized (sRecords) {
+            return sAccessCount;
+        }
+    }
+
+    public static long getTotalMillis() {
+        synchronized (sRecords) {
+            return TimeUnit.NANOSECONDS.toMillis(sTotalNanos);
+        }
+    }
+
+    public static void reset() {
+        synchronized (sRecords) {
+            sRecords.clear();
+            sSeenOperations.clear();
+            sTotalNanos = 0;
+            sAccessCount = 0;
+        }
+    }
+
+    /**
+     * Fails if more than budgetMillis has been spent on main thread I/O since the last
+     * {@link #reset()}.  Meant to be called at the end of instrumentation tests.
+     *
+     * @throws AssertionError listing the recorded accesses if the budget was exceeded
+     */
+    public static void assertWithinBudget(long budgetMillis) {
+        long totalMillis = getTotalMillis();
+        if (totalMillis > budgetMillis) {
+            StringBuilder message = new StringBuilder()
+                    .append("Main thread I/O took ").append(totalMillis)
+                    .append("ms, budget is ").append(budgetMillis).append("ms");
+            for (Record record : getRecords()) {
+                message.append("\n  ").append(record);
+            }
+            throw new AssertionError(message.toString());
+        }
+    }
+}
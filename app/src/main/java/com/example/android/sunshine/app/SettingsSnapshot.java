@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * An immutable copy of the user's settings.  The list, widgets, notification and sync read
+ * these on every row and every update, so instead of going through SharedPreferences and the
+ * resources each time, a snapshot is rebuilt whenever a preference changes and published with
+ * a single volatile write.  Readers just call {@link #get(Context)}.
+ */
+public class SettingsSnapshot {
+    public final String location;
+    public final boolean isMetric;
+    public final boolean hasLatLon;
+    public final float latitude;
+    public final float longitude;
+    @SunshineSyncAdapter.LocationStatus
+    public final int locationStatus;
+    // The art pack url format, e.g. "https://.../%s.png"
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+    public final boolean notificationsEnabled;
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners, so hold on to ours.
+    private static SnapshotUpdater sUpdater;
+
+    private static class SnapshotUpdater
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+
+        SnapshotUpdater(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            publish(mContext, sharedPreferences);
+        }
+    }
+
+    @SuppressWarnings("ResourceType")
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        hasLatLon = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        latitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        longitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        locationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * Returns the current settings.  The first call in a process loads the preferences; after
+     * that this is a single field read.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot == null) {
+            snapshot = initialize(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds the snapshot right away.  Preference listeners are called in no particular order,
+     * and only on the main thread, so code that writes a preference and immediately acts on it
+     * (or reacts to a change in its own listener) calls this first to be sure it sees the new
+     * values.
+     */
+    public static void refresh(Context context) {
+        Context appContext = context.getApplicationContext();
+        initialize(appContext);
+        long token = MainThreadIoMonitor.begin();
+        publish(appContext, PreferenceManager.getDefaultSharedPreferences(appContext));
+        MainThreadIoMonitor.end(token, "prefs:SettingsSnapshot.refresh");
+    }
+
+    private static synchronized SettingsSnapshot initialize(Context context) {
+        if (sCurrent == null) {
+            // Timed up to the end of the reads: the first of them waits for the file to load.
+            long token = MainThreadIoMonitor.begin();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            sUpdater = new SnapshotUpdater(context);
+            prefs.registerOnSharedPreferenceChangeListener(sUpdater);
+            sCurrent = new SettingsSnapshot(context, prefs);
+            MainThreadIoMonitor.end(token, "prefs:SettingsSnapshot");
+        }
+        return sCurrent;
+    }
+
+    private static synchronized void publish(Context context, SharedPreferences prefs) {
+        sCurrent = new SettingsSnapshot(context, prefs);
+    }
+}
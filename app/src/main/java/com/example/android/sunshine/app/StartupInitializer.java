@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs the work MainActivity needs at startup but that the first frame doesn't: setting up the
+ * sync account, checking Play Services and registering with GCM.  Tasks are queued with a
+ * priority while the activity is created, then run one after another on a background thread
+ * once the first frame has been drawn, most important first.
+ *
+ * Tasks must not hold on to the activity, the background thread can outlive it.
+ *
+ * Also logs how long startup took up to the first frame and up to the forecast being on screen,
+ * measured from the activity's onCreate and, for the first activity in a new process, from the
+ * process starting, and reports the latter to the framework with
+ * {@link Activity#reportFullyDrawn()} so it shows up as "Fully drawn" in the ActivityManager
+ * log.
+ */
+public class StartupInitializer {
+    private static final String LOG_TAG = StartupInitializer.class.getSimpleName();
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static class Task {
+        final int priority;
+        final String name;
+        final Runnable runnable;
+
+        Task(int priority, String name, Runnable runnable) {
+            this.priority = priority;
+            this.name = name;
+            this.runnable = runnable;
+        }
+    }
+
+    // Only the first activity created in a process is a cold start.
+    private static boolean sFirstActivity = true;
+
+    private final Activity mActivity;
+    private final long mStartTime;
+    private final boolean mColdStart;
+    private final List<Task> mTasks = new ArrayList<Task>();
+    private boolean mStarted;
+    private boolean mReportedFullyDrawn;
+
+    /**
+     * Call at the very start of the activity's onCreate, so the timings include all of it.
+     */
+    public StartupInitializer(Activity activity) {
+        mActivity = activity;
+        mStartTime = SystemClock.uptimeMillis();
+        mColdStart = sFirstActivity;
+        sFirstActivity = false;
+    }
+
+    /**
+     * Queues a task to run in the background after the first frame.  Tasks with the same
+     * priority run in the order they were added.
+     */
+    public void add(int priority, String name, Runnable task) {
+        if (mStarted) {
+            throw new IllegalStateException("Startup tasks have already been started");
+        }
+        mTasks.add(new Task(priority, name, task));
+    }
+
+    /**
+     * Runs the queued tasks once the activity has drawn its first frame.
+     */
+    public void startAfterFirstFrame() {
+        mStarted = true;
+        final View decorView = mActivity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posting from here runs after the frame that is about to be drawn.
+                        decorView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                long now = SystemClock.uptimeMillis();
+                                Log.i(LOG_TAG, "First frame after " + (now - mStartTime) + "ms");
+                                if (mColdStart) {
+                                    long processStart = SunshineApplication.getProcessStartTime();
+                                    // If the process was already up for something else, the
+                                    // time before onCreate shows it.
+                                    Log.i(LOG_TAG, "Cold start: first frame after "
+                                            + (now - processStart) + "ms, "
+                                            + (mStartTime - processStart)
+                                            + "ms of it before onCreate");
+                                }
+                                runTasks();
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    private void runTasks() {
+        List<Task> tasks = new ArrayList<Task>(mTasks);
+        mTasks.clear();
+        // A stable sort, so equal priorities keep their order.
+        Collections.sort(tasks, new Comparator<Task>() {
+            @Override
+            public int compare(Task lhs, Task rhs) {
+                return lhs.priority < rhs.priority ? -1 : (lhs.priority == rhs.priority ? 0 : 1);
+            }
+        });
+        new TaskThread(tasks).start();
+    }
+
+    /**
+     * Static, so that it only holds the tasks and not this, or through it the activity.
+     */
+    private static class TaskThread extends Thread {
+        private final List<Task> mTasks;
+
+        TaskThread(List<Task> tasks) {
+            super(LOG_TAG);
+            mTasks = tasks;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            for (Task task : mTasks) {
+                long start = SystemClock.uptimeMillis();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Startup task " + task.name + " failed", e);
+                }
+                Log.d(LOG_TAG, "Startup task " + task.name + " took "
+                        + (SystemClock.uptimeMillis() - start) + "ms");
+            }
+        }
+    }
+
+    /**
+     * Call once the forecast (or the empty view, if there is none) is on screen.  Only the first
+     * call after startup is reported.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void onForecastVisible() {
+        if (mReportedFullyDrawn) {
+            return;
+        }
+        mReportedFullyDrawn = true;
+        Log.i(LOG_TAG, "Forecast visible after "
+                + (SystemClock.uptimeMillis() - mStartTime) + "ms");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mActivity.reportFullyDrawn();
+        }
+    }
+}
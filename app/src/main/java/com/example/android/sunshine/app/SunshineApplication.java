@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Application;
+import android.os.SystemClock;
+
+/**
+ * Only here to note when the process started, which is the first of our code to run, so that
+ * {@link StartupInitializer} can time cold starts.
+ */
+public class SunshineApplication extends Application {
+    private static final long sProcessStartTime = SystemClock.uptimeMillis();
+
+    /**
+     * @return when the process started, in {@link SystemClock#uptimeMillis()} time
+     */
+    public static long getProcessStartTime() {
+        return sProcessStartTime;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Lookup tables for everything Sunshine shows for an OpenWeatherMap condition id: the icon, the
+ * art, the art pack image name, the description and the Muzei image.  Every id from 0 to
+ * {@link #MAX_WEATHER_ID} has its own slot, so each lookup is a single array read.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public class WeatherConditions {
+    public static final int MAX_WEATHER_ID = 999;
+
+    // The image names used by the art packs, see R.string.pref_art_pack_*
+    private static final String[] ART_KEYS = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+    private static final int ART_STORM = 0;
+    private static final int ART_LIGHT_RAIN = 1;
+    private static final int ART_RAIN = 2;
+    private static final int ART_SNOW = 3;
+    private static final int ART_FOG = 4;
+    private static final int ART_CLEAR = 5;
+    private static final int ART_LIGHT_CLOUDS = 6;
+    private static final int ART_CLOUDS = 7;
+
+    private static final String IMAGE_STORM =
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+    private static final String IMAGE_LIGHT_RAIN =
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+    private static final String IMAGE_RAIN =
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+    private static final String IMAGE_SNOW =
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+    private static final String IMAGE_FOG =
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+    private static final String IMAGE_DUST_STORM =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+    private static final String IMAGE_CLEAR =
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+    private static final String IMAGE_LIGHT_CLOUDS =
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+    private static final String IMAGE_CLOUDS =
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+
+    private static final int[] sIcons = new int[MAX_WEATHER_ID + 1];
+    private static final int[] sArt = new int[MAX_WEATHER_ID + 1];
+    private static final int[] sArtKeys = new int[MAX_WEATHER_ID + 1];
+    private static final String[] sImageUrls = new String[MAX_WEATHER_ID + 1];
+    private static final int[] sStrings = new int[MAX_WEATHER_ID + 1];
+
+    /**
+     * The art urls for one art pack, formatted once for every image name.
+     */
+    private static class ArtPackUrls {
+        final String format;
+        final String[] urls = new String[ART_KEYS.length];
+
+        ArtPackUrls(String format) {
+            this.format = format;
+            for (int i = 0; i < ART_KEYS.length; i++) {
+                urls[i] = String.format(Locale.US, format, ART_KEYS[i]);
+            }
+        }
+    }
+
+    private static volatile ArtPackUrls sArtPackUrls;
+
+    static {
+        Arrays.fill(sIcons, -1);
+        Arrays.fill(sArt, -1);
+        Arrays.fill(sArtKeys, -1);
+
+        // Ranges overlap in a couple of places (761 is both fog and storm); as in the original
+        // if-chains the first range listed wins.
+        putRange(200, 232, R.drawable.ic_storm, R.drawable.art_storm, ART_STORM, IMAGE_STORM);
+        putRange(300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain, ART_LIGHT_RAIN,
+                IMAGE_LIGHT_RAIN);
+        putRange(500, 504, R.drawable.ic_rain, R.drawable.art_rain, ART_RAIN, IMAGE_RAIN);
+        putRange(511, 511, R.drawable.ic_snow, R.drawable.art_snow, ART_SNOW, IMAGE_SNOW);
+        putRange(520, 531, R.drawable.ic_rain, R.drawable.art_rain, ART_RAIN, IMAGE_RAIN);
+        putRange(600, 622, R.drawable.ic_snow, R.drawable.art_snow, ART_SNOW, IMAGE_SNOW);
+        putRange(701, 761, R.drawable.ic_fog, R.drawable.art_fog, ART_FOG, IMAGE_FOG);
+        putRange(761, 761, R.drawable.ic_storm, R.drawable.art_storm, ART_STORM, IMAGE_DUST_STORM);
+        putRange(781, 781, R.drawable.ic_storm, R.drawable.art_storm, ART_STORM, IMAGE_DUST_STORM);
+        putRange(800, 800, R.drawable.ic_clear, R.drawable.art_clear, ART_CLEAR, IMAGE_CLEAR);
+        putRange(801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds,
+                ART_LIGHT_CLOUDS, IMAGE_LIGHT_CLOUDS);
+        putRange(802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds, ART_CLOUDS, IMAGE_CLOUDS);
+
+        Arrays.fill(sStrings, 200, 232 + 1, R.string.condition_2xx);
+        Arrays.fill(sStrings, 300, 321 + 1, R.string.condition_3xx);
+        sStrings[500] = R.string.condition_500;
+        sStrings[501] = R.string.condition_501;
+        sStrings[502] = R.string.condition_502;
+        sStrings[503] = R.string.condition_503;
+        sStrings[504] = R.string.condition_504;
+        sStrings[511] = R.string.condition_511;
+        sStrings[520] = R.string.condition_520;
+        sStrings[531] = R.string.condition_531;
+        sStrings[600] = R.string.condition_600;
+        sStrings[601] = R.string.condition_601;
+        sStrings[602] = R.string.condition_602;
+        sStrings[611] = R.string.condition_611;
+        sStrings[612] = R.string.condition_612;
+        sStrings[615] = R.string.condition_615;
+        sStrings[616] = R.string.condition_616;
+        sStrings[620] = R.string.condition_620;
+        sStrings[621] = R.string.condition_621;
+        sStrings[622] = R.string.condition_622;
+        sStrings[701] = R.string.condition_701;
+        sStrings[711] = R.string.condition_711;
+        sStrings[721] = R.string.condition_721;
+        sStrings[731] = R.string.condition_731;
+        sStrings[741] = R.string.condition_741;
+        sStrings[751] = R.string.condition_751;
+        sStrings[761] = R.string.condition_761;
+        sStrings[762] = R.string.condition_762;
+        sStrings[771] = R.string.condition_771;
+        sStrings[781] = R.string.condition_781;
+        sStrings[800] = R.string.condition_800;
+        sStrings[801] = R.string.condition_801;
+        sStrings[802] = R.string.condition_802;
+        sStrings[803] = R.string.condition_803;
+        sStrings[804] = R.string.condition_804;
+        sStrings[900] = R.string.condition_900;
+        sStrings[901] = R.string.condition_901;
+        sStrings[902] = R.string.condition_902;
+        sStrings[903] = R.string.condition_903;
+        sStrings[904] = R.string.condition_904;
+        sStrings[905] = R.string.condition_905;
+        sStrings[906] = R.string.condition_906;
+        sStrings[951] = R.string.condition_951;
+        sStrings[952] = R.string.condition_952;
+        sStrings[953] = R.string.condition_953;
+        sStrings[954] = R.string.condition_954;
+        sStrings[955] = R.string.condition_955;
+        sStrings[956] = R.string.condition_956;
+        sStrings[957] = R.string.condition_957;
+        sStrings[958] = R.string.condition_958;
+        sStrings[959] = R.string.condition_959;
+        sStrings[960] = R.string.condition_960;
+        sStrings[961] = R.string.condition_961;
+        sStrings[962] = R.string.condition_962;
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void putRange(int from, int to, int icon, int art, int artKey,
+                                 String imageUrl) {
+        for (int weatherId = from; weatherId <= to; weatherId++) {
+            if (sIcons[weatherId] == -1) {
+                sIcons[weatherId] = icon;
+                sArt[weatherId] = art;
+                sArtKeys[weatherId] = artKey;
+                sImageUrls[weatherId] = imageUrl;
+            }
+        }
+    }
+
+    private static boolean isKnownId(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_WEATHER_ID;
+    }
+
+    /**
+     * @return resource id for the condition's icon. -1 if no relation is found.
+     */
+    public static int getIconResource(int weatherId) {
+        return isKnownId(weatherId) ? sIcons[weatherId] : -1;
+    }
+
+    /**
+     * @return resource id for the condition's art. -1 if no relation is found.
+     */
+    public static int getArtResource(int weatherId) {
+        return isKnownId(weatherId) ? sArt[weatherId] : -1;
+    }
+
+    /**
+     * @return resource id for the condition's description. 0 if no relation is found.
+     */
+    public static int getStringResource(int weatherId) {
+        return isKnownId(weatherId) ? sStrings[weatherId] : 0;
+    }
+
+    /**
+     * @return URL of the Muzei image for the condition. null if no relation is found.
+     */
+    public static String getImageUrl(int weatherId) {
+        return isKnownId(weatherId) ? sImageUrls[weatherId] : null;
+    }
+
+    /**
+     * @param artPack the art pack URL format, as stored in the art pack preference
+     * @return url for the condition's artwork in that pack. null if no relation is found.
+     */
+    public static String getArtUrl(String artPack, int weatherId) {
+        int artKey = isKnownId(weatherId) ? sArtKeys[weatherId] : -1;
+        if (artKey == -1) {
+            return null;
+        }
+        ArtPackUrls artPackUrls = sArtPackUrls;
+        if (artPackUrls == null || !artPackUrls.format.equals(artPack)) {
+            // The art pack changed, format its urls once.
+            artPackUrls = new ArtPackUrls(artPack);
+            sArtPackUrls = artPackUrls;
+        }
+        return artPackUrls.urls[artKey];
+    }
+}
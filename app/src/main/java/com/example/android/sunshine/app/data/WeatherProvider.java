@@ -24,6 +24,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import com.example.android.sunshine.app.MainThreadIoMonitor;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -169,9 +171,59 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    // Every call is timed by the MainThreadIoMonitor, which only records it if it's made on the
+    // main thread.
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long token = MainThreadIoMonitor.begin();
+        return MainThreadIoMonitor.endQuery(token, uri,
+                doQuery(uri, projection, selection, selectionArgs, sortOrder));
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        long token = MainThreadIoMonitor.begin();
+        try {
+            return doInsert(uri, values);
+        } finally {
+            MainThreadIoMonitor.end(token, "provider:insert", uri);
+        }
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long token = MainThreadIoMonitor.begin();
+        try {
+            return doDelete(uri, selection, selectionArgs);
+        } finally {
+            MainThreadIoMonitor.end(token, "provider:delete", uri);
+        }
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        long token = MainThreadIoMonitor.begin();
+        try {
+            return doUpdate(uri, values, selection, selectionArgs);
+        } finally {
+            MainThreadIoMonitor.end(token, "provider:update", uri);
+        }
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long token = MainThreadIoMonitor.begin();
+        try {
+            return doBulkInsert(uri, values);
+        } finally {
+            MainThreadIoMonitor.end(token, "provider:bulkInsert", uri);
+        }
+    }
+
+    private Cursor doQuery(Uri uri, String[] projection, String selection,
+                           String[] selectionArgs, String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
@@ -224,8 +276,7 @@ public class WeatherProvider extends ContentProvider {
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
-    @Override
-    public Uri insert(Uri uri, ContentValues values) {
+    private Uri doInsert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
@@ -255,8 +306,7 @@ public class WeatherProvider extends ContentProvider {
         return returnUri;
     }
 
-    @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
+    private int doDelete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
@@ -289,8 +339,7 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
-    @Override
-    public int update(
+    private int doUpdate(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
@@ -315,8 +364,7 @@ public class WeatherProvider extends ContentProvider {
         return rowsUpdated;
     }
 
-    @Override
-    public int bulkInsert(Uri uri, ContentValues[] values) {
+    private int doBulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies forecast deltas pushed over GCM straight to the weather table, so changed days show up
+ * without waiting for the next sync.  A delta looks like:
+ *
+ * <pre>
+ * {"location": "94043", "seq": 12, "days": [
+ *     {"date": 1419033600000, "weather_id": 800, "main": "Clear", "max": 21.5, "min": 10.1,
+ *      "humidity": 40, "pressure": 1012.3, "speed": 3.2, "deg": 270}]}
+ * </pre>
+ *
+ * where "location" is the location setting the forecast was synced for, "seq" increases by one
+ * with every delta the server sends for that location, and "days" holds only the changed days, in
+ * the same units the sync stores.  A delta that skips sequence numbers is still applied, but the
+ * days in between are missing, so the caller should follow it with a full sync.
+ */
+public class ForecastDeltaApplier {
+    private static final String LOG_TAG = ForecastDeltaApplier.class.getSimpleName();
+
+    static final String EXTRA_FORECAST_DELTA = "forecast_delta";
+
+    /** The delta was applied and follows on from the last one. */
+    public static final int RESULT_APPLIED = 0;
+    /** The delta was applied, but some before it were missed; a full sync is needed. */
+    public static final int RESULT_APPLIED_AFTER_GAP = 1;
+    /** The delta is older than, or the same as, one already applied, and was dropped. */
+    public static final int RESULT_STALE = 2;
+    /** The delta is for a location we have never synced, and was dropped. */
+    public static final int RESULT_UNKNOWN_LOCATION = 3;
+    /** The delta couldn't be parsed. */
+    public static final int RESULT_INVALID = 4;
+
+    // Kept apart from the default preferences, the settings screen has no use for them.
+    static final String PREFS_NAME = "forecast_deltas";
+    static final String KEY_SEQUENCE_PREFIX = "sequence_";
+
+    private static final String DELTA_LOCATION = "location";
+    private static final String DELTA_SEQUENCE = "seq";
+    private static final String DELTA_DAYS = "days";
+    private static final String DAY_DATE = "date";
+    private static final String DAY_WEATHER_ID = "weather_id";
+    private static final String DAY_DESCRIPTION = "main";
+    private static final String DAY_MAX = "max";
+    private static final String DAY_MIN = "min";
+    private static final String DAY_HUMIDITY = "humidity";
+    private static final String DAY_PRESSURE = "pressure";
+    private static final String DAY_WIND_SPEED = "speed";
+    private static final String DAY_WIND_DIRECTION = "deg";
+
+    private ForecastDeltaApplier() {
+    }
+
+    /**
+     * @return true if the GCM message carries a forecast delta
+     */
+    static boolean isForecastDelta(Bundle data) {
+        return data.containsKey(EXTRA_FORECAST_DELTA);
+    }
+
+    public static int applyMessage(Context context, Bundle data) {
+        return applyMessage(context, data, null);
+    }
+
+    /**
+     * Applies the forecast delta in a GCM message.  Touches the database, so don't call it on the
+     * main thread.
+     *
+     * @param appliedDays if not null, the days written to the database are added to it
+     * @return one of the RESULT_ constants
+     */
+    public static int applyMessage(Context context, Bundle data, List<ContentValues> appliedDays) {
+        String json = data.getString(EXTRA_FORECAST_DELTA);
+        if (json == null) {
+            return RESULT_INVALID;
+        }
+        try {
+            return apply(context, new JSONObject(json), appliedDays);
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Invalid forecast delta", e);
+            return RESULT_INVALID;
+        }
+    }
+
+    static int apply(Context context, JSONObject delta) throws JSONException {
+        return apply(context, delta, null);
+    }
+
+    static int apply(Context context, JSONObject delta, List<ContentValues> appliedDays)
+            throws JSONException {
+        String locationSetting = delta.getString(DELTA_LOCATION);
+        long sequence = delta.getLong(DELTA_SEQUENCE);
+
+        long locationId = getLocationId(context, locationSetting);
+        if (locationId == -1) {
+            return RESULT_UNKNOWN_LOCATION;
+        }
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String sequenceKey = KEY_SEQUENCE_PREFIX + locationSetting;
+        // Before the first delta there's nothing to follow on from, which counts as a gap.
+        long lastSequence = prefs.getLong(sequenceKey, -1);
+        if (lastSequence != -1 && sequence <= lastSequence) {
+            return RESULT_STALE;
+        }
+
+        // Parse every day before writing any, so a bad delta changes nothing.
+        JSONArray days = delta.getJSONArray(DELTA_DAYS);
+        ContentValues[] values = new ContentValues[days.length()];
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject day = days.getJSONObject(i);
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, day.getLong(DAY_DATE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    day.getInt(DAY_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    day.getDouble(DAY_PRESSURE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    day.getDouble(DAY_WIND_SPEED));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    day.getDouble(DAY_WIND_DIRECTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.getDouble(DAY_MAX));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.getDouble(DAY_MIN));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    day.getString(DAY_DESCRIPTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    day.getInt(DAY_WEATHER_ID));
+            values[i] = weatherValues;
+        }
+
+        // bulkInsert writes all the days in one transaction, replacing the ones we had.
+        if (values.length > 0) {
+            context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                    values);
+        }
+        prefs.edit().putLong(sequenceKey, sequence).apply();
+        if (appliedDays != null) {
+            Collections.addAll(appliedDays, values);
+        }
+        Log.d(LOG_TAG, "Applied " + values.length + " days for " + locationSetting
+                + ", sequence " + sequence);
+        return lastSequence == -1 || sequence != lastSequence + 1
+                ? RESULT_APPLIED_AFTER_GAP : RESULT_APPLIED;
+    }
+
+    private static long getLocationId(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
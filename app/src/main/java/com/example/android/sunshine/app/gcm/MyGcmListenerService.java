@@ -18,6 +18,7 @@ package com.example.android.sunshine.app.gcm;
 
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -29,11 +30,15 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MyGcmListenerService extends GcmListenerService {
 
     private static final String TAG = "MyGcmListenerService";
@@ -61,7 +66,9 @@ public class MyGcmListenerService extends GcmListenerService {
                 Toast.makeText(this, "SenderID string needs to be set", Toast.LENGTH_LONG).show();
             }
             // Not a bad idea to check that the message is coming from your server.
-            if ((senderId).equals(from)) {
+            if ((senderId).equals(from) && ForecastDeltaApplier.isForecastDelta(data)) {
+                handleForecastDelta(data);
+            } else if ((senderId).equals(from)) {
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
@@ -79,6 +86,24 @@ public class MyGcmListenerService extends GcmListenerService {
         }
     }
 
+    /**
+     * Writes the pushed days to the database and updates everything a sync would, falling back
+     * to a full sync if the delta can't be applied on its own.
+     */
+    private void handleForecastDelta(Bundle data) {
+        List<ContentValues> days = new ArrayList<ContentValues>();
+        int result = ForecastDeltaApplier.applyMessage(this, data, days);
+        if (result == ForecastDeltaApplier.RESULT_APPLIED
+                || result == ForecastDeltaApplier.RESULT_APPLIED_AFTER_GAP) {
+            SunshineSyncAdapter.onForecastStored(this,
+                    days.toArray(new ContentValues[days.size()]));
+        }
+        if (result == ForecastDeltaApplier.RESULT_APPLIED_AFTER_GAP
+                || result == ForecastDeltaApplier.RESULT_INVALID) {
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+    }
+
     /**
      *  Put the message into a notification and post it.
      *  This is just one simple example of what you might choose to do with a GCM message.
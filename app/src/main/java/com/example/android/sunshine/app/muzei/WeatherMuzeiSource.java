@@ -16,8 +16,10 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.format.DateUtils;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
@@ -26,6 +28,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.util.Calendar;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
  */
@@ -38,6 +42,10 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    private static final String PREF_PUBLISHED_IMAGE_URL = "published_image_url";
+    private static final String PREF_PUBLISHED_TITLE = "published_title";
+    private static final String PREF_PUBLISHED_BYLINE = "published_byline";
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -54,26 +62,60 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
 
     @Override
     protected void onUpdate(int reason) {
+        // Today's forecast changes at midnight, whether or not a sync happens then.
+        scheduleUpdate(getNextDayStart());
+
         String location = Utility.getPreferredLocation(this);
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
         if (cursor.moveToFirst()) {
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
+            if (imageUrl != null && (reason == UPDATE_REASON_INITIAL
+                    || !isPublished(imageUrl, desc, location))) {
                 publishArtwork(new Artwork.Builder()
                         .imageUri(Uri.parse(imageUrl))
                         .title(desc)
                         .byline(location)
                         .viewIntent(new Intent(this, MainActivity.class))
                         .build());
+                getSharedPreferences().edit()
+                        .putString(PREF_PUBLISHED_IMAGE_URL, imageUrl)
+                        .putString(PREF_PUBLISHED_TITLE, desc)
+                        .putString(PREF_PUBLISHED_BYLINE, location)
+                        .apply();
             }
         }
         cursor.close();
     }
+
+    /**
+     * Republishing the same artwork makes Muzei download and blur the full size image again, so
+     * only publish when the image or its text would change.
+     */
+    private boolean isPublished(String imageUrl, String title, String byline) {
+        SharedPreferences prefs = getSharedPreferences();
+        return imageUrl.equals(prefs.getString(PREF_PUBLISHED_IMAGE_URL, null))
+                && title.equals(prefs.getString(PREF_PUBLISHED_TITLE, null))
+                && byline.equals(prefs.getString(PREF_PUBLISHED_BYLINE, null));
+    }
+
+    private static long getNextDayStart() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        // A minute late, so that the new day's row is the first one returned.
+        return calendar.getTimeInMillis() + DateUtils.MINUTE_IN_MILLIS;
+    }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetProvider;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Tells the things that show weather outside the app (widgets, Muzei and the notification) that
+ * the data changed, but only the ones whose view of the data actually changed.  The watch keeps
+ * its own per-day hashes, see {@link WearForecastSync}.
+ *
+ * For every consumer a digest is kept of just the data it displays, formatted the way it
+ * displays it, so that a sync returning the same forecast, or a settings change the consumer
+ * doesn't show, wakes nothing.  Widgets and Muzei are woken from a background thread after
+ * {@link #DEBOUNCE_MILLIS}, so a burst of changes wakes them once; the notification is driven
+ * by the sync adapter itself, which asks {@link #hasChanged(int, Digests)} and calls
+ * {@link #markUpdated(int, Digests)} once the notification has actually been posted.
+ * Working out the digests takes a query, so a sync does it once with {@link #computeDigests()}
+ * and hands the result to everything it updates.
+ *
+ * Wake-ups avoided are counted per day and logged.
+ */
+public class DataUpdateDispatcher {
+    private static final String LOG_TAG = DataUpdateDispatcher.class.getSimpleName();
+
+    public static final int CONSUMER_TODAY_WIDGET = 0;
+    public static final int CONSUMER_DETAIL_WIDGET = 1;
+    public static final int CONSUMER_MUZEI = 2;
+    public static final int CONSUMER_NOTIFICATION = 3;
+    private static final int CONSUMER_COUNT = 4;
+
+    // Also used in the preference keys, so don't rename them.
+    private static final String[] CONSUMER_NAMES = new String[]{
+            "today_widget", "detail_widget", "muzei", "notification"
+    };
+
+    // A sync is often followed closely by another change (a settings change, a GCM tickle),
+    // which should only wake everybody once.
+    private static final long DEBOUNCE_MILLIS = 2000;
+
+    private static final String PREFS_NAME = "data_update_dispatcher";
+    private static final String KEY_DIGEST_PREFIX = "digest_";
+    private static final String KEY_AVOIDED_DAY = "avoided_day";
+    private static final String KEY_AVOIDED_COUNT = "avoided_count";
+
+    private static final String[] DIGEST_COLUMNS = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    /**
+     * What every consumer shows, digested, at one point in time.
+     */
+    public static final class Digests {
+        private final String[] mDigests;
+
+        private Digests(String[] digests) {
+            mDigests = digests;
+        }
+    }
+
+    private static DataUpdateDispatcher sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private final Handler mHandler;
+    // Handed to the next dispatch, null to have it compute its own.
+    private Digests mPendingDigests;
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatchNow();
+        }
+    };
+
+    public static synchronized DataUpdateDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DataUpdateDispatcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DataUpdateDispatcher(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Wakes the widgets and Muzei if what they show has changed.  Calls made within
+     * {@link #DEBOUNCE_MILLIS} of each other are handled once, after the last of them.
+     */
+    public void dispatch() {
+        dispatch(null);
+    }
+
+    /**
+     * Like {@link #dispatch()}, with digests the caller already computed for the current data.
+     * A later call without them makes the dispatch compute its own again.
+     */
+    public void dispatch(Digests digests) {
+        synchronized (this) {
+            mPendingDigests = digests;
+        }
+        mHandler.removeCallbacks(mDispatchRunnable);
+        mHandler.postDelayed(mDispatchRunnable, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * For the consumers the sync adapter updates itself.  Doesn't remember the digests; call
+     * {@link #markUpdated(int, Digests)} once the update is done, so a failed update is retried.
+     *
+     * @param consumer {@link #CONSUMER_NOTIFICATION}
+     * @return true if the consumer's data changed since it was last marked as updated
+     */
+    public synchronized boolean hasChanged(int consumer, Digests digests) {
+        if (digests.mDigests[consumer].equals(mPrefs.getString(getDigestKey(consumer), null))) {
+            countAvoidedWakeUp(consumer);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void markUpdated(int consumer, Digests digests) {
+        mPrefs.edit().putString(getDigestKey(consumer), digests.mDigests[consumer]).apply();
+    }
+
+    /**
+     * @return how many wake-ups were skipped today because nothing had changed
+     */
+    public synchronized int getAvoidedWakeUpsToday() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        return mPrefs.getLong(KEY_AVOIDED_DAY, 0) == today ? mPrefs.getInt(KEY_AVOIDED_COUNT, 0) : 0;
+    }
+
+    private void dispatchNow() {
+        Digests pending;
+        synchronized (this) {
+            pending = mPendingDigests;
+            mPendingDigests = null;
+        }
+        String[] digests = (pending != null ? pending : computeDigests()).mDigests;
+        if (claim(CONSUMER_TODAY_WIDGET, digests[CONSUMER_TODAY_WIDGET])) {
+            wakeWidgets(TodayWidgetProvider.class);
+        }
+        if (claim(CONSUMER_DETAIL_WIDGET, digests[CONSUMER_DETAIL_WIDGET])) {
+            wakeWidgets(DetailWidgetProvider.class);
+        }
+        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
+        // Muzei background on lower API level devices
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                && claim(CONSUMER_MUZEI, digests[CONSUMER_MUZEI])) {
+            mContext.startService(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .setClass(mContext, WeatherMuzeiSource.class));
+        }
+    }
+
+    private void wakeWidgets(Class<?> provider) {
+        // Widgets added later get their own update from the framework.
+        int[] appWidgetIds = AppWidgetManager.getInstance(mContext)
+                .getAppWidgetIds(new ComponentName(mContext, provider));
+        if (appWidgetIds.length > 0) {
+            mContext.sendBroadcast(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .setClass(mContext, provider));
+        }
+    }
+
+    private static String getDigestKey(int consumer) {
+        return KEY_DIGEST_PREFIX + CONSUMER_NAMES[consumer];
+    }
+
+    private synchronized boolean claim(int consumer, String digest) {
+        String key = getDigestKey(consumer);
+        if (digest.equals(mPrefs.getString(key, null))) {
+            countAvoidedWakeUp(consumer);
+            return false;
+        }
+        mPrefs.edit().putString(key, digest).apply();
+        return true;
+    }
+
+    private void countAvoidedWakeUp(int consumer) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int avoided = mPrefs.getLong(KEY_AVOIDED_DAY, 0) == today
+                ? mPrefs.getInt(KEY_AVOIDED_COUNT, 0) + 1 : 1;
+        mPrefs.edit()
+                .putLong(KEY_AVOIDED_DAY, today)
+                .putInt(KEY_AVOIDED_COUNT, avoided)
+                .apply();
+        Log.d(LOG_TAG, "Nothing changed for " + CONSUMER_NAMES[consumer] + ", "
+                + avoided + " wake-ups avoided today");
+    }
+
+    /**
+     * Builds, for every consumer, the data it shows from today's forecast onwards, and digests it.
+     * Queries the provider, so don't call it on the main thread.
+     */
+    public Digests computeDigests() {
+        StringBuilder[] contents = new StringBuilder[CONSUMER_COUNT];
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            contents[i] = new StringBuilder();
+        }
+
+        String location = Utility.getPreferredLocation(mContext);
+        long now = System.currentTimeMillis();
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, now);
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, DIGEST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor != null) {
+            // The detail widget labels days relative to today.
+            contents[CONSUMER_DETAIL_WIDGET].append(WeatherContract.normalizeDate(now));
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(INDEX_DATE);
+                int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+                String desc = cursor.getString(INDEX_SHORT_DESC);
+                String high = Utility.formatTemperature(mContext, cursor.getDouble(INDEX_MAX_TEMP));
+                String low = Utility.formatTemperature(mContext, cursor.getDouble(INDEX_MIN_TEMP));
+                String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+
+                contents[CONSUMER_DETAIL_WIDGET].append('|').append(date).append(',')
+                        .append(weatherId).append(',').append(desc).append(',')
+                        .append(high).append(',').append(low).append(',').append(artUrl);
+                if (cursor.isFirst()) {
+                    contents[CONSUMER_TODAY_WIDGET].append(date).append(',').append(weatherId)
+                            .append(',').append(desc).append(',').append(high).append(',')
+                            .append(low);
+                    contents[CONSUMER_MUZEI].append(location).append(',').append(weatherId)
+                            .append(',').append(desc);
+                    contents[CONSUMER_NOTIFICATION].append(date).append(',').append(weatherId)
+                            .append(',').append(desc).append(',').append(high).append(',')
+                            .append(low).append(',').append(artUrl);
+                }
+            }
+            cursor.close();
+        }
+
+        String[] digests = new String[CONSUMER_COUNT];
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            digests[i] = digest(contents[i].toString());
+        }
+        return new Digests(digests);
+    }
+
+    static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(content.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Every Android device has both, but fall back to something that still works.
+            return content;
+        }
+    }
+}
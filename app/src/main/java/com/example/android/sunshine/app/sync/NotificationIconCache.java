@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The notification's large icons, already scaled to the large icon size and saved as small PNGs
+ * in the cache directory.  The sync adapter's process rarely lives from one notification to the
+ * next, so Glide's memory cache doesn't help it; with this the notification decodes a few KB
+ * instead of fetching and scaling the full art pack image.
+ */
+class NotificationIconCache {
+    private static final String LOG_TAG = NotificationIconCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "notification_icons";
+
+    // Enough for every condition of a couple of art packs.
+    private static final int MAX_ICONS = 16;
+
+    private NotificationIconCache() {
+    }
+
+    /**
+     * @return the large icon for the condition, from the cache if possible.  Fetches and caches
+     * it otherwise, so this can block; don't call it on the main thread.
+     */
+    static Bitmap getLargeIcon(Context context, int weatherId) {
+        String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        Resources resources = context.getResources();
+        int width = getLargeIconWidth(resources);
+        int height = getLargeIconHeight(resources);
+
+        File file = getFile(context, artUrl != null ? artUrl : "res:" + artResourceId,
+                width, height);
+        if (file.exists()) {
+            Bitmap icon = BitmapFactory.decodeFile(file.getPath());
+            if (icon != null) {
+                // Keeps the icons in use from being trimmed.
+                file.setLastModified(System.currentTimeMillis());
+                return icon;
+            }
+        }
+
+        Bitmap icon = null;
+        if (artUrl != null) {
+            FutureTarget<Bitmap> target = Glide.with(context)
+                    .load(artUrl)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .into(width, height);
+            try {
+                // Glide hands out a recycled bitmap, keep a copy of our own.
+                Bitmap loaded = target.get();
+                icon = loaded.copy(loaded.getConfig(), false);
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            }
+            Glide.clear(target);
+        }
+        if (icon == null) {
+            Bitmap art = BitmapFactory.decodeResource(resources, artResourceId);
+            if (art == null) {
+                return null;
+            }
+            float scale = Math.min((float) width / art.getWidth(), (float) height / art.getHeight());
+            icon = Bitmap.createScaledBitmap(art, Math.round(art.getWidth() * scale),
+                    Math.round(art.getHeight() * scale), true);
+            if (artUrl != null) {
+                // Don't cache the fallback, try the art pack again next time.
+                return icon;
+            }
+        }
+        save(file, icon);
+        return icon;
+    }
+
+    private static File getFile(Context context, String source, int width, int height) {
+        // The source's MD5, so two art urls never share a file.  Encoded in case the digest
+        // fell back to the source itself.
+        return new File(new File(context.getCacheDir(), DIRECTORY),
+                Uri.encode(DataUpdateDispatcher.digest(source))
+                        + "_" + width + "x" + height + ".png");
+    }
+
+    private static void save(File file, Bitmap icon) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error caching large icon", e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Error closing large icon file", e);
+                }
+            }
+        }
+        trim(directory);
+    }
+
+    private static void trim(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_ICONS) {
+            return;
+        }
+        // Oldest first.
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_ICONS; i++) {
+            files[i].delete();
+        }
+    }
+
+    // On Honeycomb and higher devices, we can retrieve the size of the large icon
+    // Prior to that, we use a fixed size
+    @SuppressLint("InlinedApi")
+    static int getLargeIconWidth(Resources resources) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+
+    @SuppressLint("InlinedApi")
+    static int getLargeIconHeight(Resources resources) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the watch's copy of the forecast in step with ours.  Every day from today on is its own
+ * data item, and only the days that changed since the last publish are sent; days that dropped
+ * out of the forecast are deleted.  What the watch has is remembered as a hash per day, written
+ * only once the {@link WearPublisher} says a request got through, so a request it gives up on is
+ * simply sent again next time.
+ */
+class WearForecastSync {
+    private static final String LOG_TAG = WearForecastSync.class.getSimpleName();
+
+    private static final String PREFS_NAME = "wear_forecast";
+    private static final String KEY_DAY_PREFIX = "day_";
+
+    // Older versions sent only today, at this path.
+    private static final String LEGACY_PATH = "/sunshine";
+    private static final String KEY_LEGACY_DELETED = "legacy_deleted";
+
+    private static final String[] WEAR_FORECAST_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private WearForecastSync() {
+    }
+
+    /**
+     * Queues the changed days with the {@link WearPublisher}.  Queries the provider, so don't call
+     * it on the main thread.
+     */
+    static void publish(Context context) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationQuery, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, WEAR_FORECAST_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+
+        WearPublisher publisher = WearPublisher.getInstance(context);
+        final SharedPreferences prefs =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        boolean metric = Utility.isMetric(context);
+        long now = System.currentTimeMillis();
+        Set<String> currentKeys = new HashSet<String>();
+        int sentDays = 0;
+        try {
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(INDEX_DATE);
+                byte[] payload = WearWeatherPayload.encode(
+                        date,
+                        cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_MIN_TEMP),
+                        metric,
+                        now);
+                final String key = KEY_DAY_PREFIX + date;
+                currentKeys.add(key);
+                final int hash = WearWeatherPayload.contentHash(payload);
+                if (prefs.contains(key) && prefs.getInt(key, 0) == hash) {
+                    continue;
+                }
+                PutDataRequest request = PutDataRequest.create(WearWeatherPayload.getDayPath(date))
+                        .setData(payload);
+                request.setUrgent();
+                publisher.publish(request, new WearPublisher.Callback() {
+                    @Override
+                    public void onResult(String path, boolean success) {
+                        if (success) {
+                            prefs.edit().putInt(key, hash).apply();
+                        }
+                    }
+                });
+                sentDays++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int deletedDays = 0;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            final String key = entry.getKey();
+            if (key.startsWith(KEY_DAY_PREFIX) && !currentKeys.contains(key)) {
+                long date = Long.parseLong(key.substring(KEY_DAY_PREFIX.length()));
+                publisher.delete(WearWeatherPayload.getDayPath(date), new WearPublisher.Callback() {
+                    @Override
+                    public void onResult(String path, boolean success) {
+                        if (success) {
+                            prefs.edit().remove(key).apply();
+                        }
+                    }
+                });
+                deletedDays++;
+            }
+        }
+        if (!prefs.getBoolean(KEY_LEGACY_DELETED, false)) {
+            publisher.delete(LEGACY_PATH, new WearPublisher.Callback() {
+                @Override
+                public void onResult(String path, boolean success) {
+                    if (success) {
+                        prefs.edit().putBoolean(KEY_LEGACY_DELETED, true).apply();
+                    }
+                }
+            });
+        }
+
+        Log.d(LOG_TAG, "Queued " + sentDays + " of " + currentKeys.size() + " days ("
+                + sentDays * WearWeatherPayload.SIZE + " bytes, a full publish is "
+                + currentKeys.size() * WearWeatherPayload.SIZE + " bytes), and "
+                + deletedDays + " days to delete");
+    }
+}
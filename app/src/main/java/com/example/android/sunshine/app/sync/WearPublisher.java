@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends (and deletes) data items for the watch from a thread of its own, so that callers (the
+ * sync adapter) never wait on Play Services.
+ *
+ * Requests are queued per data item path, and a newer request for a path replaces one that
+ * hasn't been sent yet, since only the latest value matters to the watch.  The queue holds at
+ * most {@link #MAX_PENDING} paths.  Failed requests are retried with exponential backoff, up to
+ * {@link #MAX_ATTEMPTS} times.  The Play Services connection is made when there's something to
+ * send and dropped again after {@link #IDLE_DISCONNECT_MILLIS} with nothing to do.  If it can't
+ * be made {@link #MAX_ATTEMPTS} times in a row, everything pending is given up on and nothing
+ * is tried again until the next request.
+ *
+ * A {@link Callback} given with a request hears whether it was stored or not, so callers only
+ * remember what actually reached the data layer.
+ *
+ * Latency (from {@link #publish(PutDataRequest)} to the data item being stored) and success
+ * counts are logged after every request, see {@link #getStats()}.
+ */
+public class WearPublisher {
+    private static final String LOG_TAG = WearPublisher.class.getSimpleName();
+
+    // Room for every day of a 14 day forecast, plus the days that dropped out of it.
+    private static final int MAX_PENDING = 32;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 2000;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long PUT_TIMEOUT_SECONDS = 10;
+    private static final long IDLE_DISCONNECT_MILLIS = 30 * 1000;
+
+    private static final int MSG_PUBLISH = 1;
+    private static final int MSG_DISCONNECT = 2;
+
+    private static WearPublisher sInstance;
+
+    public interface Callback {
+        /**
+         * Called on the publisher's thread once a request is done with.
+         *
+         * @param success false if the request was given up on, dropped from a full queue or
+         *                replaced by a newer one for the same path before being sent
+         */
+        void onResult(String path, boolean success);
+    }
+
+    private static class Pending {
+        final String path;
+        // Null to delete the data item at the path.
+        final PutDataRequest request;
+        final Callback callback;
+        final long enqueueTime;
+        int attempts;
+        long notBefore;
+
+        Pending(String path, PutDataRequest request, Callback callback, long enqueueTime) {
+            this.path = path;
+            this.request = request;
+            this.callback = callback;
+            this.enqueueTime = enqueueTime;
+        }
+
+        void finish(boolean success) {
+            if (callback != null) {
+                callback.onResult(path, success);
+            }
+        }
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler;
+    // Guarded by itself.  Ordered oldest first.
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+    // Only touched on the handler thread.
+    private int mConnectFailures;
+
+    // Guarded by this.
+    private int mPublished;
+    private int mFailed;
+    private int mSuperseded;
+    private int mDropped;
+    private long mTotalLatencyMillis;
+    private long mMaxLatencyMillis;
+
+    public static synchronized WearPublisher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearPublisher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearPublisher(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_PUBLISH:
+                        publishPending();
+                        return true;
+                    case MSG_DISCONNECT:
+                        if (mGoogleApiClient.isConnected()) {
+                            mGoogleApiClient.disconnect();
+                        }
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the data item to be sent and returns straight away.
+     */
+    public void publish(PutDataRequest request) {
+        publish(request, null);
+    }
+
+    public void publish(PutDataRequest request, Callback callback) {
+        enqueue(request.getUri().getPath(), request, callback);
+    }
+
+    /**
+     * Queues the data item at the path, which must be one of ours, to be deleted.
+     */
+    public void delete(String path) {
+        delete(path, null);
+    }
+
+    public void delete(String path, Callback callback) {
+        enqueue(path, null, callback);
+    }
+
+    private void enqueue(String path, PutDataRequest request, Callback callback) {
+        Pending replaced;
+        synchronized (mPending) {
+            replaced = mPending.remove(path);
+            if (replaced != null) {
+                countSuperseded();
+            } else if (mPending.size() >= MAX_PENDING) {
+                String oldest = mPending.keySet().iterator().next();
+                replaced = mPending.remove(oldest);
+                countDropped();
+                Log.w(LOG_TAG, "Too many pending data items, dropped " + oldest);
+            }
+            mPending.put(path, new Pending(path, request, callback, SystemClock.uptimeMillis()));
+        }
+        if (replaced != null) {
+            replaced.finish(false);
+        }
+        mHandler.removeMessages(MSG_PUBLISH);
+        mHandler.sendEmptyMessage(MSG_PUBLISH);
+    }
+
+    private void publishPending() {
+        mHandler.removeMessages(MSG_DISCONNECT);
+        while (true) {
+            boolean empty;
+            synchronized (mPending) {
+                empty = mPending.isEmpty();
+            }
+            if (empty) {
+                mHandler.sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MILLIS);
+                return;
+            }
+            if (!ensureConnected()) {
+                synchronized (mPending) {
+                    empty = mPending.isEmpty();
+                }
+                if (!empty) {
+                    // Nothing can be sent, try again later with everything that's pending.
+                    scheduleAt(SystemClock.uptimeMillis() + getBackoffMillis(mConnectFailures));
+                }
+                return;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            long nextRetry = Long.MAX_VALUE;
+            Pending next = null;
+            synchronized (mPending) {
+                for (Pending pending : mPending.values()) {
+                    if (pending.notBefore <= now) {
+                        next = pending;
+                        break;
+                    }
+                    nextRetry = Math.min(nextRetry, pending.notBefore);
+                }
+                if (next != null) {
+                    mPending.remove(next.path);
+                }
+            }
+
+            if (next == null) {
+                // Everything left is waiting to be retried.
+                scheduleAt(nextRetry);
+                return;
+            }
+
+            Status status;
+            if (next.request != null) {
+                status = Wearable.DataApi.putDataItem(mGoogleApiClient, next.request)
+                        .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS).getStatus();
+            } else {
+                Uri uri = new Uri.Builder()
+                        .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                        .path(next.path)
+                        .build();
+                status = Wearable.DataApi.deleteDataItems(mGoogleApiClient, uri)
+                        .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS).getStatus();
+            }
+            if (status.isSuccess()) {
+                countPublished(SystemClock.uptimeMillis() - next.enqueueTime);
+                next.finish(true);
+            } else {
+                Log.w(LOG_TAG, "Error sending " + next.path + ": " + status);
+                retryLater(next);
+            }
+        }
+    }
+
+    private boolean ensureConnected() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result =
+                mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (result.isSuccess()) {
+            mConnectFailures = 0;
+            return true;
+        }
+        mConnectFailures++;
+        Log.w(LOG_TAG, "Error connecting to Play Services: " + result);
+        if (result.getErrorCode() == ConnectionResult.API_UNAVAILABLE) {
+            // There's no Wear on this device, so nothing will ever get through.
+            failAllPending();
+        } else if (mConnectFailures >= MAX_ATTEMPTS) {
+            // Don't keep waking up to connect; the next request tries again.
+            Log.w(LOG_TAG, "Giving up after " + mConnectFailures + " failed connections");
+            mConnectFailures = 0;
+            failAllPending();
+        }
+        return false;
+    }
+
+    private void failAllPending() {
+        Pending[] failed;
+        synchronized (mPending) {
+            failed = mPending.values().toArray(new Pending[mPending.size()]);
+            mPending.clear();
+        }
+        for (Pending pending : failed) {
+            countFailed();
+            pending.finish(false);
+        }
+    }
+
+    private void retryLater(Pending pending) {
+        pending.attempts++;
+        if (pending.attempts >= MAX_ATTEMPTS) {
+            countFailed();
+            Log.w(LOG_TAG, "Giving up on " + pending.path + " after " + pending.attempts
+                    + " attempts. " + getStats());
+            pending.finish(false);
+            return;
+        }
+        pending.notBefore = SystemClock.uptimeMillis() + getBackoffMillis(pending.attempts);
+        boolean superseded;
+        synchronized (mPending) {
+            // A newer request for the path may have come in while this one was being sent.
+            superseded = mPending.containsKey(pending.path);
+            if (!superseded) {
+                mPending.put(pending.path, pending);
+            }
+        }
+        if (superseded) {
+            pending.finish(false);
+        }
+    }
+
+    private static long getBackoffMillis(int failures) {
+        return FIRST_RETRY_DELAY_MILLIS << Math.min(Math.max(failures - 1, 0), MAX_ATTEMPTS);
+    }
+
+    private void scheduleAt(long uptimeMillis) {
+        mHandler.removeMessages(MSG_PUBLISH);
+        mHandler.sendEmptyMessageAtTime(MSG_PUBLISH, uptimeMillis);
+    }
+
+    private synchronized void countPublished(long latencyMillis) {
+        mPublished++;
+        mTotalLatencyMillis += latencyMillis;
+        mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latencyMillis);
+        Log.d(LOG_TAG, "Sent in " + latencyMillis + "ms. " + getStats());
+    }
+
+    private synchronized void countFailed() {
+        mFailed++;
+    }
+
+    private synchronized void countSuperseded() {
+        mSuperseded++;
+    }
+
+    private synchronized void countDropped() {
+        mDropped++;
+    }
+
+    /**
+     * @return counts and latencies of the requests handled since the process started
+     */
+    public synchronized String getStats() {
+        int finished = mPublished + mFailed;
+        return "Wear publishing: " + mPublished + " of " + finished + " succeeded, "
+                + mSuperseded + " superseded, " + mDropped + " dropped, latency avg "
+                + (mPublished == 0 ? 0 : mTotalLatencyMillis / mPublished) + "ms, max "
+                + mMaxLatencyMillis + "ms";
+    }
+}
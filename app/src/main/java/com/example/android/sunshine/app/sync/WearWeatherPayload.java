@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The data item payload the watch face reads: one day's weather in a fixed {@link #SIZE} bytes,
+ * big endian, at {@link #getDayPath(long)}.
+ *
+ * <pre>
+ * byte  version      {@link #VERSION}
+ * byte  flags        {@link #FLAG_METRIC} if the user wants Celsius
+ * long  timestamp    when the phone published it, in millis
+ * long  date         the forecast's day, normalized as in the database
+ * short weatherId    the OpenWeatherMap condition id, the watch has its own icons for them
+ * short high         in tenths of a degree Celsius
+ * short low          in tenths of a degree Celsius
+ * </pre>
+ *
+ * The watch formats the temperatures itself.  The watch face has a copy of this layout in its
+ * WeatherPayload class; a change here needs a new version there too.
+ */
+class WearWeatherPayload {
+    // Each day of the forecast is its own data item, at this path followed by its date.
+    static final String DAY_PATH_PREFIX = "/sunshine/day/";
+
+    static final byte VERSION = 1;
+    static final int FLAG_METRIC = 1;
+    static final int SIZE = 1 + 1 + 8 + 8 + 2 + 2 + 2;
+
+    private WearWeatherPayload() {
+    }
+
+    static String getDayPath(long date) {
+        return DAY_PATH_PREFIX + date;
+    }
+
+    static byte[] encode(long date, int weatherId, double high, double low, boolean metric,
+                         long timestamp) {
+        return ByteBuffer.allocate(SIZE)
+                .put(VERSION)
+                .put((byte) (metric ? FLAG_METRIC : 0))
+                .putLong(timestamp)
+                .putLong(date)
+                .putShort((short) weatherId)
+                .putShort(toTenths(high))
+                .putShort(toTenths(low))
+                .array();
+    }
+
+    /**
+     * @return a hash of everything in the payload but the timestamp, to tell whether a day
+     * changed since it was last sent
+     */
+    static int contentHash(byte[] payload) {
+        // The flags, then everything after the timestamp.
+        int hash = payload[1];
+        for (int i = 1 + 1 + 8; i < payload.length; i++) {
+            hash = 31 * hash + payload[i];
+        }
+        return hash;
+    }
+
+    private static short toTenths(double celsius) {
+        return (short) Math.round(celsius * 10);
+    }
+}
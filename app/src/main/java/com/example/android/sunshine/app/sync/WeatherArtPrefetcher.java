@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.model.stream.StreamModelLoader;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Warms Glide's caches with the art for a freshly synced forecast, so that the list, detail
+ * screen, widgets and notification don't each go to the network the first time they show a
+ * remote art pack.  The original images go into the disk cache (consumers load them with
+ * {@link DiskCacheStrategy#ALL} and decode at their own size), and today's art is also put in
+ * the {@link NotificationIconCache}.
+ *
+ * Only runs on unmetered networks, and stops once {@link #MAX_PREFETCH_BYTES} have been fetched.
+ * Images already in the disk cache are counted as hits, and the hit rate is logged for each
+ * prefetch and since install.
+ */
+public class WeatherArtPrefetcher {
+    private static final String LOG_TAG = WeatherArtPrefetcher.class.getSimpleName();
+
+    // Art pack images are ~50KB each and a forecast rarely has more than five distinct
+    // conditions, so this leaves plenty of room while capping a misbehaving art pack.
+    private static final long MAX_PREFETCH_BYTES = 1024 * 1024;
+
+    private static final String PREFS_NAME = "art_prefetch";
+    private static final String KEY_LOOKUPS = "lookups";
+    private static final String KEY_HITS = "hits";
+
+    /**
+     * Never fetches anything, so a load through it only succeeds from the disk cache.  Its id
+     * is the url, the same cache key Glide's own url loader uses.
+     */
+    private static final StreamModelLoader<String> CACHE_ONLY_LOADER =
+            new StreamModelLoader<String>() {
+                @Override
+                public DataFetcher<InputStream> getResourceFetcher(final String url,
+                                                                   int width, int height) {
+                    return new DataFetcher<InputStream>() {
+                        @Override
+                        public InputStream loadData(Priority priority) throws IOException {
+                            throw new IOException("Not cached: " + url);
+                        }
+
+                        @Override
+                        public void cleanup() {
+                        }
+
+                        @Override
+                        public String getId() {
+                            return url;
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    };
+                }
+            };
+
+    private WeatherArtPrefetcher() {
+    }
+
+    /**
+     * @param days the rows just stored
+     */
+    static void prefetch(Context context, ContentValues[] days) {
+        if (days.length == 0 || Utility.usingLocalGraphics(context)) {
+            return;
+        }
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (ConnectivityManagerCompat.isActiveNetworkMetered(cm)) {
+            Log.d(LOG_TAG, "Skipping art prefetch on a metered network");
+            return;
+        }
+
+        Set<String> artUrls = new LinkedHashSet<String>();
+        for (ContentValues day : days) {
+            Integer weatherId = day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            String artUrl = weatherId == null
+                    ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+            if (artUrl != null) {
+                artUrls.add(artUrl);
+            }
+        }
+
+        long fetchedBytes = 0;
+        int fetched = 0;
+        int hits = 0;
+        for (String artUrl : artUrls) {
+            if (isCached(context, artUrl)) {
+                hits++;
+                continue;
+            }
+            if (fetchedBytes >= MAX_PREFETCH_BYTES) {
+                continue;
+            }
+            try {
+                File file = Glide.with(context)
+                        .load(artUrl)
+                        .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                        .get();
+                fetchedBytes += file.length();
+                fetched++;
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(LOG_TAG, "Error prefetching art from " + artUrl, e);
+            }
+        }
+
+        // The notification shows today's art, have its icon ready while we're on a good network.
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (ContentValues day : days) {
+            Long date = day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Integer weatherId = day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            if (date != null && date == today && weatherId != null) {
+                NotificationIconCache.getLargeIcon(context, weatherId);
+                break;
+            }
+        }
+        Log.d(LOG_TAG, "Prefetched " + fetched + " of " + artUrls.size() + " art images, "
+                + fetchedBytes + " bytes, " + hits + " already cached");
+        recordHits(context, artUrls.size(), hits);
+    }
+
+    private static boolean isCached(Context context, String artUrl) {
+        try {
+            Glide.with(context)
+                    .using(CACHE_ONLY_LOADER)
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    private static void recordHits(Context context, int lookups, int hits) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int totalLookups = prefs.getInt(KEY_LOOKUPS, 0) + lookups;
+        int totalHits = prefs.getInt(KEY_HITS, 0) + hits;
+        prefs.edit()
+                .putInt(KEY_LOOKUPS, totalLookups)
+                .putInt(KEY_HITS, totalHits)
+                .apply();
+        if (totalLookups > 0) {
+            Log.d(LOG_TAG, "Art cache hit rate " + (100 * totalHits / totalLookups) + "% of "
+                    + totalLookups + " lookups");
+        }
+    }
+}
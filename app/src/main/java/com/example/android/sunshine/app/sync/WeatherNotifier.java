@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Shows today's weather in a notification, at most once a day.
+ *
+ * Runs in three stages, each only reached if the one before it passed, cheapest first:
+ * deciding whether a notification is due (preferences, and the digests the sync already
+ * computed), loading today's forecast (one query), and rendering it (the large icon, from
+ * {@link NotificationIconCache}).  How often each stage is reached is counted, see
+ * {@link #getStats()}.
+ *
+ * Today's forecast only counts as notified once the notification has been posted.
+ */
+class WeatherNotifier {
+    private static final String LOG_TAG = WeatherNotifier.class.getSimpleName();
+
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    private static final int STAGE_CALLED = 0;
+    private static final int STAGE_ELIGIBLE = 1;
+    private static final int STAGE_INPUTS_LOADED = 2;
+    private static final int STAGE_NOTIFIED = 3;
+    private static final String[] STAGE_NAMES = new String[] {
+            "called", "eligible", "inputs loaded", "notified"
+    };
+
+    private static final int[] sStageCounts = new int[STAGE_NAMES.length];
+
+    private WeatherNotifier() {
+    }
+
+    /**
+     * Call after a sync.  Blocks on the provider and possibly the network, so don't call it on the
+     * main thread.
+     *
+     * @param digests the sync's digests of the data it stored
+     */
+    static void notifyWeather(Context context, DataUpdateDispatcher.Digests digests) {
+        reached(STAGE_CALLED);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastNotificationKey = context.getString(R.string.pref_last_notification);
+        if (!isEligible(context, prefs, lastNotificationKey, digests)) {
+            return;
+        }
+        reached(STAGE_ELIGIBLE);
+
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                locationQuery, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION,
+                null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        int weatherId;
+        double high;
+        double low;
+        String desc;
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            high = cursor.getDouble(INDEX_MAX_TEMP);
+            low = cursor.getDouble(INDEX_MIN_TEMP);
+            desc = cursor.getString(INDEX_SHORT_DESC);
+        } finally {
+            cursor.close();
+        }
+        reached(STAGE_INPUTS_LOADED);
+
+        render(context, weatherId, high, low, desc);
+        prefs.edit().putLong(lastNotificationKey, System.currentTimeMillis()).apply();
+        DataUpdateDispatcher.getInstance(context)
+                .markUpdated(DataUpdateDispatcher.CONSUMER_NOTIFICATION, digests);
+        reached(STAGE_NOTIFIED);
+        Log.d(LOG_TAG, getStats());
+    }
+
+    private static boolean isEligible(Context context, SharedPreferences prefs,
+                                      String lastNotificationKey,
+                                      DataUpdateDispatcher.Digests digests) {
+        if (!SettingsSnapshot.get(context).notificationsEnabled) {
+            return false;
+        }
+        // Only notify for the first sync of the day.
+        long lastNotification = prefs.getLong(lastNotificationKey, 0);
+        if (System.currentTimeMillis() - lastNotification < DateUtils.DAY_IN_MILLIS) {
+            return false;
+        }
+        return DataUpdateDispatcher.getInstance(context)
+                .hasChanged(DataUpdateDispatcher.CONSUMER_NOTIFICATION, digests);
+    }
+
+    private static void render(Context context, int weatherId, double high, double low,
+                               String desc) {
+        Resources resources = context.getResources();
+        Bitmap largeIcon = NotificationIconCache.getLargeIcon(context, weatherId);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setColor(resources.getColor(R.color.primary_light))
+                .setSmallIcon(Utility.getIconResourceForWeatherCondition(weatherId))
+                .setLargeIcon(largeIcon)
+                .setContentTitle(context.getString(R.string.app_name))
+                .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(context, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+        builder.setContentIntent(resultPendingIntent);
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+    }
+
+    private static synchronized void reached(int stage) {
+        sStageCounts[stage]++;
+    }
+
+    /**
+     * @return how many times each stage was reached since the process started
+     */
+    static synchronized String getStats() {
+        StringBuilder stats = new StringBuilder("Notification stages:");
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            stats.append(' ').append(STAGE_NAMES[stage]).append('=').append(sStageCounts[stage]);
+        }
+        return stats.toString();
+    }
+}
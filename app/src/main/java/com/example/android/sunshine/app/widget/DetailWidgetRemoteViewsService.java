@@ -1,24 +1,30 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -42,6 +48,17 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Art decoded at the list icon size, keyed by art url and shared by every detail widget.
+    // Enough for all eight art images at xxxhdpi.
+    private static final int ART_CACHE_BYTES = 1024 * 1024;
+    private static final LruCache<String, Bitmap> sArtCache =
+            new LruCache<String, Bitmap>(ART_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            };
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
@@ -71,6 +88,49 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                prefetchArt();
+            }
+
+            /**
+             * Decodes the art for every row that isn't cached yet, all at once, so that
+             * getViewAt never has to wait for an image.  Called on the binder thread, where
+             * blocking is fine.
+             */
+            private void prefetchArt() {
+                Context context = DetailWidgetRemoteViewsService.this;
+                if (data == null || Utility.usingLocalGraphics(context)) {
+                    return;
+                }
+                long start = System.nanoTime();
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                Map<String, FutureTarget<Bitmap>> requests =
+                        new HashMap<String, FutureTarget<Bitmap>>();
+                for (int position = 0; data.moveToPosition(position); position++) {
+                    String artUrl = Utility.getArtUrlForWeatherCondition(context,
+                            data.getInt(INDEX_WEATHER_CONDITION_ID));
+                    if (artUrl != null && !requests.containsKey(artUrl)
+                            && sArtCache.get(artUrl) == null) {
+                        requests.put(artUrl, Glide.with(context)
+                                .load(artUrl)
+                                .asBitmap()
+                                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                                .fitCenter()
+                                .into(iconSize, iconSize));
+                    }
+                }
+                for (Map.Entry<String, FutureTarget<Bitmap>> request : requests.entrySet()) {
+                    FutureTarget<Bitmap> target = request.getValue();
+                    try {
+                        // Copy it, as Glide reuses the bitmap once the request is cleared.
+                        Bitmap bitmap = target.get();
+                        sArtCache.put(request.getKey(), bitmap.copy(bitmap.getConfig(), false));
+                    } catch (InterruptedException | ExecutionException e) {
+                        Log.e(LOG_TAG, "Error retrieving art from " + request.getKey(), e);
+                    }
+                    Glide.clear(target);
+                }
+                Log.d(LOG_TAG, "Prefetched " + requests.size() + " art images in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
             }
 
             @Override
@@ -92,22 +152,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         data == null || !data.moveToPosition(position)) {
                     return null;
                 }
+                long start = System.nanoTime();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
+                    // Prefetched in onDataSetChanged; if it failed we fall back to the icon.
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                    if (weatherArtResourceUrl != null) {
+                        weatherArtImage = sArtCache.get(weatherArtResourceUrl);
                     }
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
@@ -141,6 +197,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                // The bitmap is parcelled to the launcher with the row, and is most of its size.
+                Log.d(LOG_TAG, "Row " + position + " built in "
+                        + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + "us, "
+                        + (weatherArtImage == null
+                                ? 0 : weatherArtImage.getRowBytes() * weatherArtImage.getHeight())
+                        + " bitmap bytes");
                 return views;
             }
 
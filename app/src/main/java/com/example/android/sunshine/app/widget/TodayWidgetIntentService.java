@@ -26,6 +26,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -34,6 +35,8 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.Arrays;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
@@ -50,6 +53,17 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // Every widget uses one of these layouts, depending on its width
+    private static final int[] LAYOUT_IDS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
+    // Hash of the content and widget ids each layout was last pushed with, keyed by layout id.
+    // Only touched from this service's worker thread.
+    private static final SparseIntArray sLastUpdateHashes = new SparseIntArray();
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
@@ -60,6 +74,10 @@ public class TodayWidgetIntentService extends IntentService {
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            sLastUpdateHashes.clear();
+            return;
+        }
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
@@ -85,20 +103,43 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
+        int contentHash = Arrays.hashCode(new Object[] {
+                weatherArtResourceId, description, formattedMaxTemperature, formattedMinTemperature
+        });
+
+        // Sort the widgets by the layout their width calls for
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int[] layoutIds = new int[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetIds[i]);
             if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
+                layoutIds[i] = R.layout.widget_today_large;
             } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
+                layoutIds[i] = R.layout.widget_today;
             } else {
-                layoutId = R.layout.widget_today_small;
+                layoutIds[i] = R.layout.widget_today_small;
+            }
+        }
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        // Build each layout once and push it to all of its widgets in a single update
+        for (int layoutId : LAYOUT_IDS) {
+            int[] bucket = getWidgetIdsWithLayout(appWidgetIds, layoutIds, layoutId);
+            if (bucket.length == 0) {
+                sLastUpdateHashes.delete(layoutId);
+                continue;
+            }
+            int updateHash = 31 * contentHash + Arrays.hashCode(bucket);
+            if (sLastUpdateHashes.get(layoutId) == updateHash
+                    && sLastUpdateHashes.indexOfKey(layoutId) >= 0) {
+                // These widgets already show exactly this.
+                continue;
             }
+
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
@@ -110,15 +151,29 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on these app widgets
+            appWidgetManager.updateAppWidget(bucket, views);
+            sLastUpdateHashes.put(layoutId, updateHash);
+        }
+    }
+
+    private static int[] getWidgetIdsWithLayout(int[] appWidgetIds, int[] layoutIds,
+                                                int layoutId) {
+        int count = 0;
+        for (int widgetLayoutId : layoutIds) {
+            if (widgetLayoutId == layoutId) {
+                count++;
+            }
+        }
+        int[] bucket = new int[count];
+        for (int i = 0, j = 0; i < appWidgetIds.length; i++) {
+            if (layoutIds[i] == layoutId) {
+                bucket[j++] = appWidgetIds[i];
+            }
         }
+        return bucket;
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Walks an hour of interactive mode the way the engine's timer does, from one scheduled redraw
+    to the next, and counts the redraws.
+ */
+public class TestRedrawScheduler extends AndroidTestCase {
+
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Part way through a minute, the way the timer starts when the face becomes visible.
+    private static final long START = TimeUnit.DAYS.toMillis(16800) + 12345;
+
+    public void testMinutesRedrawOncePerMinute() {
+        RedrawScheduler scheduler = new RedrawScheduler();
+        scheduler.addSource(RedrawScheduler.MINUTES);
+        // Was 3600 when the timer ran every second.
+        assertEquals("Error: Wrong number of redraws in an hour", 60, countRedrawsInAnHour(scheduler));
+    }
+
+    public void testSecondsOptIn() {
+        RedrawScheduler scheduler = new RedrawScheduler();
+        scheduler.addSource(RedrawScheduler.MINUTES);
+        scheduler.addSource(RedrawScheduler.SECONDS);
+        assertEquals("Error: Wrong number of redraws in an hour", 3600,
+                countRedrawsInAnHour(scheduler));
+
+        scheduler.removeSource(RedrawScheduler.SECONDS);
+        assertEquals("Error: Wrong number of redraws in an hour", 60, countRedrawsInAnHour(scheduler));
+    }
+
+    public void testEarliestSourceWins() {
+        final long dayStart = START + 1000;
+        RedrawScheduler scheduler = new RedrawScheduler();
+        scheduler.addSource(RedrawScheduler.MINUTES);
+        scheduler.addSource(new RedrawScheduler.ContentSource() {
+            @Override
+            public long getNextChangeTime(long now) {
+                return now < dayStart ? dayStart : Long.MAX_VALUE;
+            }
+        });
+        assertEquals("Error: Didn't redraw when the day started", dayStart,
+                scheduler.getNextRedrawTime(START));
+    }
+
+    public void testNoSources() {
+        assertEquals("Error: Redraw scheduled with nothing to show", Long.MAX_VALUE,
+                new RedrawScheduler().getNextRedrawTime(START));
+    }
+
+    private static int countRedrawsInAnHour(RedrawScheduler scheduler) {
+        int redraws = 0;
+        long now = scheduler.getNextRedrawTime(START);
+        while (now <= START + HOUR_IN_MILLIS) {
+            redraws++;
+            now = scheduler.getNextRedrawTime(now);
+        }
+        return redraws;
+    }
+}
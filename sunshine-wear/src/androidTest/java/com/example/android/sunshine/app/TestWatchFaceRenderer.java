@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+
+/*
+    Renders the watch face offscreen, a frame a second the way the interactive timer does, and
+    checks that once warmed up the frames don't allocate.  Also logs what a frame costs.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+    private static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 10;
+    private static final int FRAMES = 10000;
+    private static final long FRAME_MILLIS = 1000;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private Bitmap mBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setInsets(
+                mContext.getResources().getDimension(R.dimen.digital_x_offset),
+                mContext.getResources().getDimension(R.dimen.digital_text_size));
+        mRenderer.setWeather("25°", "16°",
+                BitmapFactory.decodeResource(mContext.getResources(), R.drawable.ic_clear));
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.releaseLayers();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testInteractiveFramesDontAllocate() {
+        assertFramesDontAllocate(false);
+    }
+
+    public void testAmbientFramesDontAllocate() {
+        mRenderer.setAmbient(true, true);
+        assertFramesDontAllocate(true);
+    }
+
+    /**
+     * Compares a frame that only blits the static layer and draws the time with one where the
+     * static layer has to be rendered again first, which is what every frame used to cost.
+     */
+    public void testFrameCost() {
+        long start = getStartTime();
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * FRAME_MILLIS);
+        }
+
+        long layeredStart = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * FRAME_MILLIS);
+        }
+        long layeredNanos = (SystemClock.elapsedRealtimeNanos() - layeredStart) / FRAMES;
+
+        Bitmap icon = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.ic_clear);
+        long fullStart = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.setWeather("25°", "16°", icon);
+            mRenderer.draw(mCanvas, mBounds, start + i * FRAME_MILLIS);
+        }
+        long fullNanos = (SystemClock.elapsedRealtimeNanos() - fullStart) / FRAMES;
+
+        Log.i(LOG_TAG, "Per frame: " + layeredNanos + "ns from the cached layer, "
+                + fullNanos + "ns rendering everything");
+    }
+
+    /**
+     * @return 13:00 today, so 10k frames a second apart cross minutes and hours but not days,
+     * a new day being the one time the date is allowed to be formatted again
+     */
+    private static long getStartTime() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 13);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private void assertFramesDontAllocate(boolean ambient) {
+        long start = getStartTime();
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * FRAME_MILLIS);
+        }
+
+        int allocations = countFrameAllocations(start);
+        assertEquals("Error: " + (ambient ? "Ambient" : "Interactive") + " frames allocated "
+                + allocations + " objects over " + FRAMES + " frames", 0, allocations);
+    }
+
+    /**
+     * Draws the measured frames and counts what they allocate on this thread.  The thread
+     * allocation counters are deprecated as of API 23, but Debug.getRuntimeStat(), which
+     * replaces them, only has process-wide numbers.
+     */
+    @SuppressWarnings("deprecation")
+    private int countFrameAllocations(long start) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = WARM_UP_FRAMES; i < WARM_UP_FRAMES + FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, start + i * FRAME_MILLIS);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+}
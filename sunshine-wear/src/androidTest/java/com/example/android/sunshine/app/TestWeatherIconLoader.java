@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks every weather icon decodes straight to the size the watch face draws it at, and logs
+    what that costs against decoding it the old way and scaling it on every frame.
+ */
+public class TestWeatherIconLoader extends AndroidTestCase {
+    private static final String LOG_TAG = TestWeatherIconLoader.class.getSimpleName();
+
+    private static final int SIZE = 50;
+    private static final int DRAWS = 1000;
+
+    private static final int[] ICONS = new int[]{
+            R.drawable.ic_clear, R.drawable.ic_cloudy, R.drawable.ic_fog,
+            R.drawable.ic_light_clouds, R.drawable.ic_light_rain, R.drawable.ic_rain,
+            R.drawable.ic_snow, R.drawable.ic_storm
+    };
+
+    public void testDecodesToSize() {
+        Resources resources = mContext.getResources();
+        for (int iconId : ICONS) {
+            Bitmap icon = WeatherIconLoader.decodeIcon(resources, iconId, SIZE);
+            assertNotNull("Error: Couldn't decode " + resources.getResourceEntryName(iconId),
+                    icon);
+            assertEquals("Error: Wrong width for " + resources.getResourceEntryName(iconId),
+                    SIZE, icon.getWidth());
+            assertEquals("Error: Wrong height for " + resources.getResourceEntryName(iconId),
+                    SIZE, icon.getHeight());
+            icon.recycle();
+        }
+    }
+
+    public void testDecodeAndDrawCost() {
+        Resources resources = mContext.getResources();
+        Bitmap target = Bitmap.createBitmap(320, 320, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(target);
+        Paint filterPaint = new Paint();
+        filterPaint.setFilterBitmap(true);
+        RectF bounds = new RectF(90, 215, 90 + SIZE, 215 + SIZE);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        Bitmap full = BitmapFactory.decodeResource(resources, R.drawable.ic_clear);
+        long fullDecodeNanos = SystemClock.elapsedRealtimeNanos() - start;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < DRAWS; i++) {
+            canvas.drawBitmap(full, null, bounds, filterPaint);
+        }
+        long fullDrawNanos = (SystemClock.elapsedRealtimeNanos() - start) / DRAWS;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        Bitmap sized = WeatherIconLoader.decodeIcon(resources, R.drawable.ic_clear, SIZE);
+        long sizedDecodeNanos = SystemClock.elapsedRealtimeNanos() - start;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < DRAWS; i++) {
+            canvas.drawBitmap(sized, 90, 215, null);
+        }
+        long sizedDrawNanos = (SystemClock.elapsedRealtimeNanos() - start) / DRAWS;
+
+        Log.i(LOG_TAG, "Full size: " + fullDecodeNanos / 1000 + "us to decode, "
+                + full.getByteCount() + " bytes, " + fullDrawNanos + "ns to draw scaled");
+        Log.i(LOG_TAG, "Pre-sized: " + sizedDecodeNanos / 1000 + "us to decode, "
+                + sized.getByteCount() + " bytes, " + sizedDrawNanos + "ns to draw");
+
+        full.recycle();
+        sized.recycle();
+        target.recycle();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks the watch's forecast survives being loaded again, that older copies of a day never
+    replace newer ones, and that only today's forecast is shown as today's.
+ */
+public class TestWeatherStore extends AndroidTestCase {
+
+    private static final String PREFS_NAME = "test_weather_store";
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private SharedPreferences mPrefs;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        // The phone dates each day by its local midnight.
+        mToday = WeatherStore.getDayStart(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    public void testReloadedStoreHasTheSameDays() {
+        WeatherStore store = new WeatherStore(mPrefs);
+        store.put(createDay(mToday, 800, 1000));
+        store.put(createDay(mToday + DAY_IN_MILLIS, 500, 1000));
+
+        WeatherStore reloaded = new WeatherStore(mPrefs);
+        assertEquals("Error: Wrong number of days after reloading", 2, reloaded.size());
+        WeatherPayload today = reloaded.getDay(System.currentTimeMillis());
+        assertNotNull("Error: Today missing after reloading", today);
+        assertEquals("Error: Wrong weather after reloading", 800, today.weatherId);
+    }
+
+    public void testOlderCopyDoesNotReplaceNewer() {
+        WeatherStore store = new WeatherStore(mPrefs);
+        assertTrue("Error: New day not stored", store.put(createDay(mToday, 800, 2000)));
+        assertFalse("Error: Older copy stored", store.put(createDay(mToday, 500, 1000)));
+        assertFalse("Error: Same copy stored again", store.put(createDay(mToday, 800, 2000)));
+        assertTrue("Error: Newer copy not stored", store.put(createDay(mToday, 600, 3000)));
+
+        assertEquals("Error: Wrong weather after reconciling", 600,
+                new WeatherStore(mPrefs).getDay(System.currentTimeMillis()).weatherId);
+    }
+
+    public void testEarlierDayIsNotShownAsToday() {
+        WeatherStore store = new WeatherStore(mPrefs);
+        store.put(createDay(mToday, 800, 1000));
+        long tomorrow = WeatherStore.getDayStart(mToday + TimeUnit.HOURS.toMillis(26));
+
+        // Just after midnight, today's forecast is less than a day old but isn't tomorrow's.
+        assertNull("Error: Earlier day shown", store.getDay(tomorrow + 1));
+        assertEquals("Error: Wrong forecast just before midnight", 800,
+                store.getDay(tomorrow - 1).weatherId);
+    }
+
+    public void testOldAndRemovedDaysAreDropped() {
+        WeatherStore store = new WeatherStore(mPrefs);
+        store.put(createDay(mToday - 2 * DAY_IN_MILLIS, 800, 1000));
+        store.put(createDay(mToday, 800, 1000));
+        store.put(createDay(mToday + DAY_IN_MILLIS, 800, 1000));
+        assertEquals("Error: Past day kept", 2, store.size());
+
+        store.retainDates(Collections.singleton(mToday));
+        assertEquals("Error: Removed day kept", 1, new WeatherStore(mPrefs).size());
+    }
+
+    public void testUnreadableDaysAreDropped() {
+        mPrefs.edit().putString("day_" + mToday, "not a payload").commit();
+        assertEquals("Error: Unreadable day loaded", 0, new WeatherStore(mPrefs).size());
+        assertFalse("Error: Unreadable day kept", mPrefs.contains("day_" + mToday));
+    }
+
+    /**
+     * Builds a payload the way the phone's WearWeatherPayload does.
+     */
+    private static WeatherPayload createDay(long date, int weatherId, long timestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(24);
+        buffer.put((byte) 1);
+        buffer.put((byte) 1);
+        buffer.putLong(timestamp);
+        buffer.putLong(date);
+        buffer.putShort((short) weatherId);
+        buffer.putShort((short) 215);
+        buffer.putShort((short) 120);
+        return WeatherPayload.decode(buffer.array());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out when the watch face next needs redrawing in interactive mode: the earliest time any
+ * of its {@link ContentSource}s says what it shows will change.  The face only shows hours and
+ * minutes, so by default that's once a minute rather than once a second; something that shows
+ * seconds opts in by adding {@link #SECONDS}.  New data doesn't need scheduling, the face
+ * redraws as soon as it arrives.
+ *
+ * Also counts redraws, and logs how many there were every hour.
+ */
+public class RedrawScheduler {
+    private static final String LOG_TAG = RedrawScheduler.class.getSimpleName();
+
+    private static final long SECOND_IN_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Something on the watch face that changes over time.
+     */
+    public interface ContentSource {
+        /**
+         * @return the first time after now that what's shown changes, or {@link Long#MAX_VALUE}
+         * if it won't without being told
+         */
+        long getNextChangeTime(long now);
+    }
+
+    public static final ContentSource MINUTES = new ContentSource() {
+        @Override
+        public long getNextChangeTime(long now) {
+            return (now / MINUTE_IN_MILLIS + 1) * MINUTE_IN_MILLIS;
+        }
+    };
+
+    public static final ContentSource SECONDS = new ContentSource() {
+        @Override
+        public long getNextChangeTime(long now) {
+            return (now / SECOND_IN_MILLIS + 1) * SECOND_IN_MILLIS;
+        }
+    };
+
+    private final List<ContentSource> mSources = new ArrayList<>();
+
+    private long mCountStart = -1;
+    private int mRedrawCount;
+
+    public void addSource(ContentSource source) {
+        if (!mSources.contains(source)) {
+            mSources.add(source);
+        }
+    }
+
+    public void removeSource(ContentSource source) {
+        mSources.remove(source);
+    }
+
+    /**
+     * @return the next time the face needs redrawing, or {@link Long#MAX_VALUE} if nothing on it
+     * changes by itself
+     */
+    public long getNextRedrawTime(long now) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < mSources.size(); i++) {
+            next = Math.min(next, mSources.get(i).getNextChangeTime(now));
+        }
+        return next;
+    }
+
+    /**
+     * Call for every redraw, whatever caused it.
+     */
+    public void countRedraw(long now) {
+        if (mCountStart == -1) {
+            mCountStart = now;
+        } else if (now - mCountStart >= HOUR_IN_MILLIS) {
+            Log.d(LOG_TAG, mRedrawCount + " redraws in the last "
+                    + TimeUnit.MILLISECONDS.toMinutes(now - mCountStart) + " minutes");
+            mCountStart = now;
+            mRedrawCount = 0;
+        }
+        mRedrawCount++;
+    }
+}
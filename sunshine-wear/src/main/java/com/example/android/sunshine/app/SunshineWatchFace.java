@@ -22,21 +22,18 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
@@ -44,46 +41,33 @@ import android.view.WindowInsets;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing the time and today's weather. On devices with low-bit ambient mode,
+ * the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
-    /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final String LOG_TAG = SunshineWatchFace.class.getSimpleName();
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    private static final String WEATHER_PREFS_NAME = "weather";
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -112,50 +96,35 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine implements
             DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener {
-
-        String LOW_TEMP = "lowTemp";
-        String HIGH_TEMP = "highTemp";
-        String WEATHER_ICON = "weatherIcon";
-        String PATH = "/sunshine";
+            GoogleApiClient.OnConnectionFailedListener,
+            WeatherIconLoader.Callback {
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Paint mPrimaryTextPaint;
-        Paint mSecondaryTextPaint;
-        Paint mWeatherIconPaint;
-
+        WatchFaceRenderer mRenderer;
+        WeatherIconLoader mIconLoader;
+        final RedrawScheduler mRedrawScheduler = new RedrawScheduler();
 
         boolean mAmbient;
-        // Variables used to display the time on the watch face
-        Calendar mCalendar;
-        Date mDate;
-        SimpleDateFormat mDateFormat;
 
         GoogleApiClient mGoogleApiClient;
-        String lowTemp;
-        String highTemp;
         Bitmap mWeatherIconBitmap;
+        int mWeatherIconId;
+        WeatherStore mWeatherStore;
+        WeatherPayload mShownDay;
+        // For logging how long it takes to show any weather.
+        long mCreatedRealtime;
+        boolean mShownWeather;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initialize();
-                invalidate();
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                redraw();
             }
         };
         int mTapCount;
 
-        float mXOffset;
-        float mYOffset;
-        float mTimeTextSize;
-        float mMeridiemTextSize;
-        float mDateTextSize;
-        float mHighTempTextSize;
-        float mLowTempTextSize;
-
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -165,6 +134,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            mCreatedRealtime = SystemClock.elapsedRealtime();
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFace.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -176,58 +146,54 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setViewProtectionMode(WatchFaceStyle.PROTECT_HOTWORD_INDICATOR)
                     .build());
 
-            Resources resources = SunshineWatchFace.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.watch_face_background));
-
-            mPrimaryTextPaint = new Paint();
-            mPrimaryTextPaint = createTextPaint(resources.getColor(R.color.primary_text));
-
-            mSecondaryTextPaint = new Paint();
-            mSecondaryTextPaint = createTextPaint(resources.getColor(R.color.secondary_text));
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this.getResources());
+            mIconLoader = new WeatherIconLoader(SunshineWatchFace.this.getResources(),
+                    mRenderer.getIconSize(), this);
+            mRedrawScheduler.addSource(RedrawScheduler.MINUTES);
+            // Moves on to the next day's forecast when it starts.
+            mRedrawScheduler.addSource(new RedrawScheduler.ContentSource() {
+                @Override
+                public long getNextChangeTime(long now) {
+                    return mWeatherStore.getNextDayStart(now);
+                }
+            });
 
-            mWeatherIconPaint = new Paint();
+            // Show the last forecast we got straight away, the data layer catches up after.
+            mWeatherStore = new WeatherStore(
+                    getSharedPreferences(WEATHER_PREFS_NAME, Context.MODE_PRIVATE));
+            showToday();
 
-            mCalendar = Calendar.getInstance();
-            initialize();
+            // Stays connected as long as the engine is around, so becoming visible doesn't wait
+            // on a connection.
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
                     .addApi(Wearable.API)
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
                     .build();
+            mGoogleApiClient.connect();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            removeListener();
+            disconnect();
+            mRenderer.releaseLayers();
+            mIconLoader.quit();
             super.onDestroy();
         }
 
-
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
 
             if (visible) {
                 registerReceiver();
-                mGoogleApiClient.connect();
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initialize();
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                // And the day.
+                showToday();
             } else {
                 unregisterReceiver();
-                removeListener();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -259,27 +225,26 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             // Load resources that have alternate values for round watches.
             Resources resources = SunshineWatchFace.this.getResources();
             boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            mTimeTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            mMeridiemTextSize = resources.getDimension(R.dimen.digital_meridiem_text_size);
-            mDateTextSize = resources.getDimension(R.dimen.digital_date_text_size);
-            mHighTempTextSize = resources.getDimension(R.dimen.digital_high_temp_text_size);
-            mLowTempTextSize = resources.getDimension(R.dimen.digital_low_temp_text_size);
+            mRenderer.setInsets(
+                    resources.getDimension(isRound
+                            ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset),
+                    resources.getDimension(isRound
+                            ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setAmbient(mAmbient, mLowBitAmbient);
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            // Moves on to the next day's forecast at midnight.
+            showToday();
+            redraw();
         }
 
         @Override
@@ -287,11 +252,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mPrimaryTextPaint.setAntiAlias(!inAmbientMode);
-                    mSecondaryTextPaint.setAntiAlias(!inAmbientMode);
-                }
-                invalidate();
+                mRenderer.setAmbient(mAmbient, mLowBitAmbient);
+                redraw();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -316,63 +278,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     // The user has completed the tap gesture.
                     break;
             }
-            invalidate();
+            redraw();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-            String timeText = String.format(Locale.getDefault(), "%02d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE));
-            String meridiemText = getAmOrPm(mCalendar.get(Calendar.AM_PM));
-            String dateText = mDateFormat.format(mDate);
-            mPrimaryTextPaint.setTextSize(mTimeTextSize);
-            canvas.drawText(timeText, mXOffset, mYOffset, mPrimaryTextPaint);
-
-            mPrimaryTextPaint.setTextSize(mMeridiemTextSize);
-            canvas.drawText(meridiemText, mXOffset+140, mYOffset, mPrimaryTextPaint);
-
-
-            // Drawing the components when not in ambient mode
-            if (!mAmbient) {
-                mPrimaryTextPaint.setTextSize(mDateTextSize);
-                canvas.drawText(dateText, mXOffset, mYOffset + 35, mSecondaryTextPaint);
-
-                if(highTemp != null && lowTemp != null) {
-
-
-                    mPrimaryTextPaint.setTextSize(mHighTempTextSize);
-                    canvas.drawText(highTemp, 160, 255, mPrimaryTextPaint);
-
-                    mSecondaryTextPaint.setTextSize(mLowTempTextSize);
-                    canvas.drawText(lowTemp, 220, 255, mPrimaryTextPaint);
-
-                    mSecondaryTextPaint.setStrokeWidth(0);
-                    canvas.drawLine(120, 190, 200, 190, mPrimaryTextPaint);
-                }
-                if(mWeatherIconBitmap != null) {
-                    float ratio = 50 / (float) mWeatherIconBitmap.getWidth();
-                    float middleX = 50 / 2.0f;
-                    float middleY = 50 / 2.0f;
-
-                    Matrix scaleMatrix = new Matrix();
-                    scaleMatrix.setScale(ratio, ratio, 90+middleX, 260+middleY);
-                    canvas.setMatrix(scaleMatrix);
-                    mWeatherIconPaint.setFilterBitmap(true);
-
-                    canvas.drawBitmap(mWeatherIconBitmap, 90*ratio, 260*ratio, mWeatherIconPaint);
-                }
-            }
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
         }
 
         /**
@@ -395,74 +306,111 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time in interactive mode, then wait for the next time anything
+         * shown changes.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
+            showToday();
+            redraw();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                long nextMs = mRedrawScheduler.getNextRedrawTime(timeMs);
+                if (nextMs != Long.MAX_VALUE) {
+                    mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, nextMs - timeMs);
+                }
             }
         }
 
-        /**
-         * Helper function to initialize the date formats setting
-         * mDateFormat to display the current day of the week and
-         * mDayFormat to display the date of the current day.
-         */
-        private void initialize() {
-            mDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy", Locale.getDefault());
-            mDateFormat.setCalendar(mCalendar);
-            mDate = new Date();
+        private void redraw() {
+            mRedrawScheduler.countRedraw(System.currentTimeMillis());
+            invalidate();
         }
 
         /**
-         * Extracting the initial weather data from the connected nodes
-         * and getting the dataMap from the DataMapItem to further extract
-         * the required values.
+         * Loads every day the phone has published, in case they changed while we weren't
+         * listening, and forgets the stored days it no longer has.
          */
         private void getWeatherData() {
-            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
-                @Override
-                public void onResult(@NonNull NodeApi.GetConnectedNodesResult nodes) {
-                    Node nodeAuthority = null;
-                    for (Node node : nodes.getNodes()) {
-                        nodeAuthority = node;
-                    }
-                    if (nodeAuthority == null) return;
-                    Uri uri = new Uri.Builder()
-                            .scheme(PutDataRequest.WEAR_URI_SCHEME)
-                            .path(PATH)
-                            .authority(nodeAuthority.getId())
-                            .build();
-
-                    Wearable.DataApi.getDataItem(mGoogleApiClient, uri)
-                            .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                                @Override
-                                public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                                    if (dataItemResult.getStatus().isSuccess()
-                                            && dataItemResult.getDataItem() != null) {
-                                        DataMap map = DataMapItem.fromDataItem
-                                                (dataItemResult.getDataItem()).getDataMap();
-                                        extractWeatherData(map);
-                                    }
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WeatherStore.DAY_PATH_PREFIX)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri, DataApi.FILTER_PREFIX)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            if (dataItems.getStatus().isSuccess()) {
+                                Set<Long> dates = new HashSet<>();
+                                for (DataItem item : dataItems) {
+                                    dates.add(WeatherStore.getDateFromPath(item.getUri()));
+                                    storeDay(item);
                                 }
-                            });
-                }
-            });
+                                mWeatherStore.retainDates(dates);
+                                showToday();
+                            }
+                            dataItems.release();
+                        }
+                    });
         }
 
         /**
-         * Helper function to extract the values from the DataMap received
+         * Helper function to keep the day in a data item received
          *
-         * @param map - dataMap containing the values received
+         * @param item - data item holding a {@link WeatherPayload}
+         */
+        private void storeDay(DataItem item) {
+            byte[] data = item.getData();
+            WeatherPayload day = WeatherPayload.decode(data);
+            if (day == null) {
+                Log.w(LOG_TAG, "Ignoring weather data in an unknown format");
+                return;
+            }
+            if (mWeatherStore.put(day)) {
+                Log.d(LOG_TAG, "Received " + data.length + " bytes, "
+                        + (System.currentTimeMillis() - day.timestamp) + "ms after publishing");
+            }
+        }
+
+        /**
+         * Shows the stored forecast for today, if it isn't shown already.
          */
-        private void extractWeatherData(DataMap map) {
-            highTemp = map.getString(HIGH_TEMP);
-            lowTemp = map.getString(LOW_TEMP);
-            getBitmapFromAsset(map.getAsset(WEATHER_ICON));
+        private void showToday() {
+            WeatherPayload today = mWeatherStore.getDay(System.currentTimeMillis());
+            if (today == mShownDay) {
+                return;
+            }
+            mShownDay = today;
+            int iconId = today == null
+                    ? -1 : WeatherPayload.getIconResourceForWeatherCondition(today.weatherId);
+            if (iconId != mWeatherIconId) {
+                mWeatherIconId = iconId;
+                // Until a new icon is decoded, the weather is shown without one.
+                mWeatherIconBitmap = iconId == -1 ? null : mIconLoader.load(iconId);
+            }
+            updateWeather();
+        }
+
+        @Override
+        public void onIconLoaded(int iconId, Bitmap icon) {
+            if (iconId == mWeatherIconId) {
+                mWeatherIconBitmap = icon;
+                updateWeather();
+            }
+        }
+
+        private void updateWeather() {
+            if (mShownDay != null && !mShownWeather) {
+                mShownWeather = true;
+                Log.d(LOG_TAG, "First weather shown "
+                        + (SystemClock.elapsedRealtime() - mCreatedRealtime) + "ms after creation");
+            }
+            if (mShownDay == null) {
+                mRenderer.setWeather(null, null, mWeatherIconBitmap);
+            } else {
+                mRenderer.setWeather(mShownDay.formatHigh(SunshineWatchFace.this),
+                        mShownDay.formatLow(SunshineWatchFace.this), mWeatherIconBitmap);
+            }
+            redraw();
         }
 
         @Override
@@ -479,14 +427,17 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             for (DataEvent event : dataEventBuffer) {
+                DataItem item = event.getDataItem();
+                if (!WeatherStore.isDayPath(item.getUri())) {
+                    continue;
+                }
                 if (event.getType() == DataEvent.TYPE_CHANGED) {
-                    DataItem item = event.getDataItem();
-                    if (item.getUri().getPath().equals(PATH)) {
-                        DataMap map = DataMapItem.fromDataItem(item).getDataMap();
-                        extractWeatherData(map);
-                    }
+                    storeDay(item);
+                } else if (event.getType() == DataEvent.TYPE_DELETED) {
+                    mWeatherStore.remove(WeatherStore.getDateFromPath(item.getUri()));
                 }
             }
+            showToday();
         }
 
         @Override
@@ -494,41 +445,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         }
 
-        public void removeListener() {
-            Wearable.DataApi.removeListener(mGoogleApiClient, this);
-            if (mGoogleApiClient != null && mGoogleApiClient.isConnected())
-                mGoogleApiClient.disconnect();
-        }
-
-        /**
-         * Loads the bitmap from the asset sent by the phone
-         *
-         * @param asset - asset received from the data map
-         */
-        public void getBitmapFromAsset(Asset asset) {
-            if (asset != null) {
-                Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).setResultCallback(
-                        new ResultCallback<DataApi.GetFdForAssetResult>() {
-                            @Override
-                            public void onResult(@NonNull DataApi.GetFdForAssetResult getFdForAssetResult) {
-                                InputStream inputStream = getFdForAssetResult.getInputStream();
-                                if (inputStream != null) {
-                                    mWeatherIconBitmap = BitmapFactory.decodeStream(inputStream);
-                                }
-                            }
-                        });
+        private void disconnect() {
+            if (mGoogleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(mGoogleApiClient, this);
             }
+            mGoogleApiClient.disconnect();
         }
-
-    }
-
-    /**
-     * Returns the appropriate String to be appended to the time displayed in the watch face
-     *
-     * @param amOrPm - AM_PM value of the current time
-     * @return - AM/PM as per amOrPM being the AM value or PM value
-     */
-    public String getAmOrPm(int amOrPm) {
-        return amOrPm == Calendar.AM ? getString(R.string.am) : getString(R.string.pm);
     }
 }
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the Sunshine watch face.  Kept apart from the engine so it can be driven by a test.
+ *
+ * The face is drawn in two layers.  Everything but the time (the background, the date and the
+ * weather) changes at most a few times a day, so it's rendered once into a bitmap, the static
+ * layer, and only rendered again when the weather, the insets, the time zone or the day change.
+ * Interactive, ambient and low-bit ambient mode each have their own static layer, so switching
+ * modes doesn't throw one away.  A frame is then one bitmap blit plus the time.
+ *
+ * {@link #draw(Canvas, Rect, long)} runs for every frame, so it doesn't allocate: the time is
+ * written into a reused char buffer, the date and AM/PM text are only rebuilt when the minute
+ * changes, and every paint and rectangle is made up front.
+ */
+public class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Where the weather goes, in pixels, as laid out for a 320px screen.
+    private static final float MERIDIEM_X_OFFSET = 140;
+    private static final float DATE_Y_OFFSET = 35;
+    private static final float HIGH_TEMP_X = 160;
+    private static final float LOW_TEMP_X = 220;
+    private static final float TEMP_Y = 255;
+    private static final float DIVIDER_Y = 190;
+    private static final float DIVIDER_START_X = 120;
+    private static final float DIVIDER_END_X = 200;
+    private static final float ICON_SIZE = 50;
+    private static final float ICON_LEFT = 90;
+    private static final float ICON_TOP = 215;
+
+    // The static layers, one per mode.
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+    private static final int LAYER_LOW_BIT_AMBIENT = 2;
+    private static final int LAYER_COUNT = 3;
+
+    private final String mAm;
+    private final String mPm;
+    private final float mYOffset;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimePaint;
+    private final Paint mMeridiemPaint;
+    private final Paint mDatePaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+    private final Paint mDividerPaint;
+    private final Paint mIconPaint;
+    private final Paint mAmbientDatePaint;
+    private final Paint mAmbientHighTempPaint;
+    private final Paint mAmbientLowTempPaint;
+    private final RectF mIconBounds =
+            new RectF(ICON_LEFT, ICON_TOP, ICON_LEFT + ICON_SIZE, ICON_TOP + ICON_SIZE);
+
+    private float mXOffset;
+    private int mLayer = LAYER_INTERACTIVE;
+
+    // The layers are opaque, so they don't need an alpha channel.
+    private final Bitmap[] mLayers = new Bitmap[LAYER_COUNT];
+    private final boolean[] mLayerStale = new boolean[LAYER_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+
+    private final Calendar mCalendar;
+    private final Date mDate = new Date();
+    private SimpleDateFormat mDateFormat;
+    // "hh:mm"
+    private final char[] mTimeChars = new char[5];
+    private String mMeridiemText;
+    private String mDateText;
+    private long mFormattedMinute = -1;
+    private int mFormattedDay = -1;
+
+    private String mHighTemp;
+    private String mLowTemp;
+    private Bitmap mWeatherIcon;
+
+    public WatchFaceRenderer(Resources resources) {
+        mAm = resources.getString(R.string.am);
+        mPm = resources.getString(R.string.pm);
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.watch_face_background));
+
+        int primaryColor = resources.getColor(R.color.primary_text);
+        int secondaryColor = resources.getColor(R.color.secondary_text);
+        float meridiemTextSize = resources.getDimension(R.dimen.digital_meridiem_text_size);
+        float dateTextSize = resources.getDimension(R.dimen.digital_date_text_size);
+        float highTempTextSize = resources.getDimension(R.dimen.digital_high_temp_text_size);
+        float lowTempTextSize = resources.getDimension(R.dimen.digital_low_temp_text_size);
+        mTimePaint = createTextPaint(primaryColor);
+        mMeridiemPaint = createTextPaint(primaryColor);
+        mMeridiemPaint.setTextSize(meridiemTextSize);
+        mDatePaint = createTextPaint(secondaryColor);
+        mDatePaint.setTextSize(dateTextSize);
+        mHighTempPaint = createTextPaint(primaryColor);
+        mHighTempPaint.setTextSize(highTempTextSize);
+        mLowTempPaint = createTextPaint(secondaryColor);
+        mLowTempPaint.setTextSize(lowTempTextSize);
+        mDividerPaint = createTextPaint(primaryColor);
+        mIconPaint = new Paint();
+        mIconPaint.setFilterBitmap(true);
+
+        // In ambient mode the weather is shown as plain text, no icon and no colors.
+        int ambientPrimaryColor = resources.getColor(R.color.ambient_primary_text);
+        int ambientSecondaryColor = resources.getColor(R.color.ambient_secondary_text);
+        mAmbientDatePaint = createTextPaint(ambientSecondaryColor);
+        mAmbientDatePaint.setTextSize(dateTextSize);
+        mAmbientHighTempPaint = createTextPaint(ambientPrimaryColor);
+        mAmbientHighTempPaint.setTextSize(highTempTextSize);
+        mAmbientLowTempPaint = createTextPaint(ambientSecondaryColor);
+        mAmbientLowTempPaint.setTextSize(lowTempTextSize);
+
+        mCalendar = Calendar.getInstance();
+        setTimeZone(TimeZone.getDefault());
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * @return the width and height the weather icon is drawn at, in pixels; an icon this size is
+     * drawn as it is, anything else is scaled
+     */
+    public int getIconSize() {
+        return (int) ICON_SIZE;
+    }
+
+    /**
+     * Also call when the locale changes, the date format follows it.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy", Locale.getDefault());
+        mDateFormat.setCalendar(mCalendar);
+        mFormattedMinute = -1;
+        mFormattedDay = -1;
+    }
+
+    public void setInsets(float xOffset, float timeTextSize) {
+        mXOffset = xOffset;
+        mTimePaint.setTextSize(timeTextSize);
+        invalidateLayers();
+    }
+
+    public void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        if (!ambient) {
+            mLayer = LAYER_INTERACTIVE;
+        } else {
+            mLayer = lowBitAmbient ? LAYER_LOW_BIT_AMBIENT : LAYER_AMBIENT;
+        }
+        boolean antiAlias = mLayer != LAYER_LOW_BIT_AMBIENT;
+        mTimePaint.setAntiAlias(antiAlias);
+        mMeridiemPaint.setAntiAlias(antiAlias);
+    }
+
+    /**
+     * @param highTemp null if there's no weather to show
+     * @param lowTemp null if there's no weather to show
+     * @param icon null if there's no icon to show
+     */
+    public void setWeather(String highTemp, String lowTemp, Bitmap icon) {
+        mHighTemp = highTemp;
+        mLowTemp = lowTemp;
+        mWeatherIcon = icon;
+        invalidateLayers();
+    }
+
+    /**
+     * Frees the static layers, they're rendered again on the next frame.
+     */
+    public void releaseLayers() {
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            if (mLayers[i] != null) {
+                mLayers[i].recycle();
+                mLayers[i] = null;
+            }
+        }
+    }
+
+    public void draw(Canvas canvas, Rect bounds, long now) {
+        updateTimeText(now);
+
+        canvas.drawBitmap(getStaticLayer(bounds), 0, 0, null);
+
+        // Draw HH:MM and AM/PM.
+        canvas.drawText(mTimeChars, 0, mTimeChars.length, mXOffset, mYOffset, mTimePaint);
+        canvas.drawText(mMeridiemText, mXOffset + MERIDIEM_X_OFFSET, mYOffset, mMeridiemPaint);
+    }
+
+    private void invalidateLayers() {
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            mLayerStale[i] = true;
+        }
+    }
+
+    /**
+     * @return the static layer for the current mode, rendered again first if it's stale
+     */
+    private Bitmap getStaticLayer(Rect bounds) {
+        Bitmap layer = mLayers[mLayer];
+        if (layer == null
+                || layer.getWidth() != bounds.width() || layer.getHeight() != bounds.height()) {
+            if (layer != null) {
+                layer.recycle();
+            }
+            layer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.RGB_565);
+            mLayers[mLayer] = layer;
+            mLayerStale[mLayer] = true;
+        }
+        if (mLayerStale[mLayer]) {
+            mLayerCanvas.setBitmap(layer);
+            if (mLayer == LAYER_INTERACTIVE) {
+                drawInteractiveLayer(mLayerCanvas, bounds);
+            } else {
+                drawAmbientLayer(mLayerCanvas, mLayer == LAYER_LOW_BIT_AMBIENT);
+            }
+            mLayerCanvas.setBitmap(null);
+            mLayerStale[mLayer] = false;
+        }
+        return layer;
+    }
+
+    private void drawInteractiveLayer(Canvas canvas, Rect bounds) {
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        canvas.drawText(mDateText, mXOffset, mYOffset + DATE_Y_OFFSET, mDatePaint);
+
+        if (mHighTemp != null && mLowTemp != null) {
+            canvas.drawText(mHighTemp, HIGH_TEMP_X, TEMP_Y, mHighTempPaint);
+            canvas.drawText(mLowTemp, LOW_TEMP_X, TEMP_Y, mLowTempPaint);
+            canvas.drawLine(DIVIDER_START_X, DIVIDER_Y, DIVIDER_END_X, DIVIDER_Y, mDividerPaint);
+        }
+        if (mWeatherIcon != null) {
+            if (mWeatherIcon.getWidth() == getIconSize()
+                    && mWeatherIcon.getHeight() == getIconSize()) {
+                canvas.drawBitmap(mWeatherIcon, ICON_LEFT, ICON_TOP, null);
+            } else {
+                canvas.drawBitmap(mWeatherIcon, null, mIconBounds, mIconPaint);
+            }
+        }
+    }
+
+    private void drawAmbientLayer(Canvas canvas, boolean lowBit) {
+        canvas.drawColor(Color.BLACK);
+        mAmbientDatePaint.setAntiAlias(!lowBit);
+        mAmbientHighTempPaint.setAntiAlias(!lowBit);
+        mAmbientLowTempPaint.setAntiAlias(!lowBit);
+        canvas.drawText(mDateText, mXOffset, mYOffset + DATE_Y_OFFSET, mAmbientDatePaint);
+
+        if (mHighTemp != null && mLowTemp != null) {
+            canvas.drawText(mHighTemp, HIGH_TEMP_X, TEMP_Y, mAmbientHighTempPaint);
+            canvas.drawText(mLowTemp, LOW_TEMP_X, TEMP_Y, mAmbientLowTempPaint);
+        }
+    }
+
+    /**
+     * Brings the time, AM/PM and date text up to date.  Only does any work when the minute
+     * changed since the last frame, and only allocates when the day did.
+     */
+    private void updateTimeText(long now) {
+        long minute = now / MINUTE_IN_MILLIS;
+        if (minute == mFormattedMinute) {
+            return;
+        }
+        mFormattedMinute = minute;
+        mCalendar.setTimeInMillis(now);
+
+        int hour = mCalendar.get(Calendar.HOUR);
+        int minuteOfHour = mCalendar.get(Calendar.MINUTE);
+        mTimeChars[0] = (char) ('0' + hour / 10);
+        mTimeChars[1] = (char) ('0' + hour % 10);
+        mTimeChars[2] = ':';
+        mTimeChars[3] = (char) ('0' + minuteOfHour / 10);
+        mTimeChars[4] = (char) ('0' + minuteOfHour % 10);
+        mMeridiemText = mCalendar.get(Calendar.AM_PM) == Calendar.AM ? mAm : mPm;
+
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day != mFormattedDay) {
+            mFormattedDay = day;
+            mDate.setTime(now);
+            mDateText = mDateFormat.format(mDate);
+            // The date is part of the static layers.
+            invalidateLayers();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes weather icons on a background thread, straight to the size the watch face draws them
+ * at, so drawing one is a plain blit.  Decoded icons are kept by resource id; there are only a
+ * handful of them, and a condition seen before costs nothing.
+ */
+public class WeatherIconLoader {
+    private static final String LOG_TAG = WeatherIconLoader.class.getSimpleName();
+
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param icon null if the icon couldn't be decoded
+         */
+        void onIconLoaded(int iconId, Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final int mSize;
+    private final Callback mCallback;
+    private final SparseArray<Bitmap> mIcons = new SparseArray<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    /**
+     * @param size the width and height to decode the icons to, in pixels
+     */
+    public WeatherIconLoader(Resources resources, int size, Callback callback) {
+        mResources = resources;
+        mSize = size;
+        mCallback = callback;
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * @return the icon if it's already been decoded, otherwise null, and the callback is called
+     * once it has been
+     */
+    public Bitmap load(final int iconId) {
+        Bitmap icon = mIcons.get(iconId);
+        if (icon != null) {
+            return icon;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                final Bitmap icon = decodeIcon(mResources, iconId, mSize);
+                if (icon != null) {
+                    Log.d(LOG_TAG, "Decoded icon " + mResources.getResourceEntryName(iconId)
+                            + " in " + (SystemClock.elapsedRealtime() - start) + "ms, "
+                            + icon.getWidth() + "x" + icon.getHeight() + ", "
+                            + icon.getByteCount() + " bytes");
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (icon != null) {
+                            mIcons.put(iconId, icon);
+                        }
+                        mCallback.onIconLoaded(iconId, icon);
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    public void quit() {
+        mThread.quit();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Decodes a drawable resource to size x size pixels.  The largest power of two that keeps
+     * the image at least that big is skipped while decoding, and the decoder scales the rest of
+     * the way, so the full size icon is never in memory.
+     *
+     * @return the icon, or null if it couldn't be decoded
+     */
+    static Bitmap decodeIcon(Resources resources, int iconId, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(resources, iconId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size
+                && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // Scales the sampled width to exactly the size we want.
+        options.inScaled = true;
+        options.inDensity = options.outWidth / sampleSize;
+        options.inTargetDensity = size;
+        // The icons have transparent corners, so they need an alpha channel; at this size
+        // ARGB_8888 is only a few kilobytes.
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap icon = decodeStream(resources, iconId, options);
+        if (icon != null) {
+            // Otherwise it's marked with the made up density above, and canvases would scale it
+            // again.
+            icon.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return icon;
+    }
+
+    /**
+     * Decodes the resource's file as it is, without the density scaling decodeResource applies.
+     */
+    private static Bitmap decodeStream(Resources resources, int iconId,
+                                       BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            stream = resources.openRawResource(iconId, new TypedValue());
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (Resources.NotFoundException e) {
+            Log.w(LOG_TAG, "No icon " + iconId, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Nothing to do, it was only read.
+                }
+            }
+        }
+    }
+}
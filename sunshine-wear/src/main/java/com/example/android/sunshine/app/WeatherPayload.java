@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * One day's weather as sent by the phone.  The layout is documented in the phone app's
+ * WearWeatherPayload, which writes it.
+ */
+public class WeatherPayload {
+    private static final byte VERSION = 1;
+    private static final int FLAG_METRIC = 1;
+
+    public final long timestamp;
+    public final long date;
+    public final int weatherId;
+    public final boolean metric;
+    // In Celsius.
+    public final double high;
+    public final double low;
+
+    // As received, so it can be kept.
+    private final byte[] mData;
+
+    private WeatherPayload(byte[] data, long timestamp, long date, int weatherId, boolean metric,
+                           double high, double low) {
+        mData = data;
+        this.timestamp = timestamp;
+        this.date = date;
+        this.weatherId = weatherId;
+        this.metric = metric;
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @return the decoded payload, or null if it's empty or from a version we don't know
+     */
+    public static WeatherPayload decode(byte[] data) {
+        if (data == null || data.length == 0 || data[0] != VERSION) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+            int flags = buffer.get();
+            long timestamp = buffer.getLong();
+            long date = buffer.getLong();
+            int weatherId = buffer.getShort();
+            double high = buffer.getShort() / 10.0;
+            double low = buffer.getShort() / 10.0;
+            return new WeatherPayload(data, timestamp, date, weatherId,
+                    (flags & FLAG_METRIC) != 0, high, low);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the payload as it was received, for {@link #decode(byte[])}
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public String formatHigh(Context context) {
+        return formatTemperature(context, high);
+    }
+
+    public String formatLow(Context context) {
+        return formatTemperature(context, low);
+    }
+
+    private String formatTemperature(Context context, double celsius) {
+        double temperature = metric ? celsius : celsius * 1.8 + 32;
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    /**
+     * Helper method to provide the icon resource id according to the weather condition id returned
+     * by the OpenWeatherMap call.  Matches the phone app's icons.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    public static int getIconResourceForWeatherCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+}
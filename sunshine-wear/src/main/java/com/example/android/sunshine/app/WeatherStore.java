@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Base64;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The watch's copy of the phone's forecast, one {@link WeatherPayload} per day, so the watch face
+ * can move on to the next day at midnight without hearing from the phone.
+ *
+ * The days are also kept in shared preferences, so a new watch face shows the last forecast
+ * straight away instead of waiting on the data layer.  Whatever the data layer says later is
+ * reconciled by the time the phone published it: an older copy of a day never replaces a newer
+ * one.  Days that are over are dropped.
+ */
+public class WeatherStore {
+    private static final String LOG_TAG = WeatherStore.class.getSimpleName();
+
+    // Each day of the forecast is its own data item, at this path followed by its date.
+    public static final String DAY_PATH_PREFIX = "/sunshine/day/";
+
+    // A day's entry is its start, allow for the day being 25 hours long.
+    private static final long MAX_DAY_MILLIS = TimeUnit.HOURS.toMillis(25);
+
+    private static final String KEY_DAY_PREFIX = "day_";
+
+    private final SharedPreferences mPrefs;
+    private final TreeMap<Long, WeatherPayload> mDays = new TreeMap<>();
+
+    /**
+     * Loads the days kept in the given preferences, which this store then owns.
+     */
+    public WeatherStore(SharedPreferences prefs) {
+        mPrefs = prefs;
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            WeatherPayload day = null;
+            if (entry.getKey().startsWith(KEY_DAY_PREFIX) && entry.getValue() instanceof String) {
+                try {
+                    day = WeatherPayload.decode(
+                            Base64.decode((String) entry.getValue(), Base64.DEFAULT));
+                } catch (IllegalArgumentException e) {
+                    // Not Base64, dropped below.
+                }
+            }
+            if (day == null) {
+                Log.w(LOG_TAG, "Dropping unreadable " + entry.getKey());
+                editor.remove(entry.getKey());
+            } else {
+                mDays.put(day.date, day);
+            }
+        }
+        removeOldDays(System.currentTimeMillis(), editor);
+        editor.apply();
+    }
+
+    public static boolean isDayPath(Uri uri) {
+        String path = uri.getPath();
+        return path != null && path.startsWith(DAY_PATH_PREFIX);
+    }
+
+    /**
+     * @return the date a day's data item is for, or -1 if it's not a day's data item
+     */
+    public static long getDateFromPath(Uri uri) {
+        if (!isDayPath(uri)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uri.getPath().substring(DAY_PATH_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return false if we already have the same or a newer copy of the day
+     */
+    public boolean put(WeatherPayload day) {
+        WeatherPayload current = mDays.get(day.date);
+        if (current != null && current.timestamp >= day.timestamp) {
+            return false;
+        }
+        mDays.put(day.date, day);
+        SharedPreferences.Editor editor = mPrefs.edit()
+                .putString(KEY_DAY_PREFIX + day.date,
+                        Base64.encodeToString(day.getData(), Base64.NO_WRAP));
+        removeOldDays(System.currentTimeMillis(), editor);
+        editor.apply();
+        return true;
+    }
+
+    public void remove(long date) {
+        if (mDays.remove(date) != null) {
+            mPrefs.edit().remove(KEY_DAY_PREFIX + date).apply();
+        }
+    }
+
+    /**
+     * Removes every day but the given ones, for when we've heard everything the phone has
+     * published.
+     */
+    public void retainDates(Set<Long> dates) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        Iterator<Long> iterator = mDays.keySet().iterator();
+        while (iterator.hasNext()) {
+            long date = iterator.next();
+            if (!dates.contains(date)) {
+                iterator.remove();
+                editor.remove(KEY_DAY_PREFIX + date);
+            }
+        }
+        editor.apply();
+    }
+
+    private void removeOldDays(long now, SharedPreferences.Editor editor) {
+        Iterator<Long> iterator = mDays.keySet().iterator();
+        while (iterator.hasNext()) {
+            long date = iterator.next();
+            if (now - date < MAX_DAY_MILLIS) {
+                // Sorted, so the rest are newer.
+                return;
+            }
+            iterator.remove();
+            editor.remove(KEY_DAY_PREFIX + date);
+        }
+    }
+
+    /**
+     * @return the forecast for the local day that includes the given time, or null if we don't
+     * have it.  Never an earlier day's: just after midnight yesterday's forecast is still within
+     * a day's length, but showing it as today's would be wrong.
+     */
+    public WeatherPayload getDay(long timeMillis) {
+        return mDays.get(getDayStart(timeMillis));
+    }
+
+    /**
+     * @return local midnight at the start of the day that includes the given time, which is the
+     * date the phone gives that day's forecast
+     */
+    static long getDayStart(long timeMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return when the next day we have a forecast for starts, or {@link Long#MAX_VALUE} if we
+     * don't have one after the given time
+     */
+    public long getNextDayStart(long timeMillis) {
+        Long date = mDays.higherKey(timeMillis);
+        return date == null ? Long.MAX_VALUE : date;
+    }
+
+    public int size() {
+        return mDays.size();
+    }
+}